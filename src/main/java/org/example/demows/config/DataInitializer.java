@@ -5,11 +5,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.demows.entity.ChatMessage;
 import org.example.demows.entity.ExchangeRate;
 import org.example.demows.entity.Notification;
+import org.example.demows.entity.NotificationSequence;
 import org.example.demows.entity.Promotion;
 import org.example.demows.entity.User;
+import org.example.demows.repository.ChatConversationRepository;
 import org.example.demows.repository.ChatMessageRepository;
 import org.example.demows.repository.ExchangeRateRepository;
 import org.example.demows.repository.NotificationRepository;
+import org.example.demows.repository.NotificationSequenceRepository;
 import org.example.demows.repository.PromotionRepository;
 import org.example.demows.repository.UserRepository;
 import org.springframework.boot.CommandLineRunner;
@@ -33,7 +36,9 @@ public class DataInitializer implements CommandLineRunner {
     private final ExchangeRateRepository exchangeRateRepository;
     private final PromotionRepository promotionRepository;
     private final NotificationRepository notificationRepository;
+    private final NotificationSequenceRepository notificationSequenceRepository;
     private final ChatMessageRepository chatMessageRepository;
+    private final ChatConversationRepository chatConversationRepository;
     private final PasswordEncoder passwordEncoder;
 
     @Override
@@ -236,6 +241,7 @@ public class DataInitializer implements CommandLineRunner {
                             .isRead(false)
                             .isActive(true)
                             .createdAt(LocalDateTime.now().minusHours(2))
+                            .seq(1L)
                             .build(),
 
                     Notification.builder()
@@ -248,10 +254,15 @@ public class DataInitializer implements CommandLineRunner {
                             .isRead(false)
                             .isActive(true)
                             .createdAt(LocalDateTime.now().minusMinutes(30))
+                            .seq(2L)
                             .build()
             );
 
             notificationRepository.saveAll(notifications);
+            notificationSequenceRepository.save(NotificationSequence.builder()
+                    .userId(demoUser.getId())
+                    .lastSeq(notifications.size())
+                    .build());
             log.info("Created {} sample notifications", notifications.size());
 
         } catch (Exception e) {
@@ -409,7 +420,9 @@ public class DataInitializer implements CommandLineRunner {
             );
 
             chatMessageRepository.saveAll(chatMessages);
-            log.info("Created {} sample chat messages", chatMessages.size());
+            // Seed messages bypass the chat service, so build their inbox entries in one go
+            int conversations = chatConversationRepository.rebuildFromMessages();
+            log.info("Created {} sample chat messages in {} inbox entries", chatMessages.size(), conversations);
 
         } catch (Exception e) {
             log.error("Error initializing chat messages", e);
@@ -0,0 +1,20 @@
+package org.example.demows.config;
+
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Scheduler for the {@code @Scheduled} jobs, sized by {@code spring.task.scheduling.pool.size}.
+ * Spring Boot only creates it when there is no other TaskScheduler; the WebSocket heartbeat and broker
+ * schedulers are, so without this bean every job would share one default thread.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+}
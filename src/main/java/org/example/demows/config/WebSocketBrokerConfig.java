@@ -0,0 +1,60 @@
+package org.example.demows.config;
+
+import lombok.RequiredArgsConstructor;
+import org.example.demows.websocket.FanOutShards;
+import org.example.demows.websocket.IndexedSubscriptionRegistry;
+import org.example.demows.websocket.ShardedBrokerMessageHandler;
+import org.example.demows.websocket.WebSocketSessionRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * STOMP broker infrastructure. Replaces {@code @EnableWebSocketMessageBroker} so the simple broker
+ * configured in {@link WebSocketConfig} can be swapped for {@link ShardedBrokerMessageHandler}, and the
+ * STOMP handler's sessions can be tracked by {@link WebSocketSessionRegistry}.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    private final IndexedSubscriptionRegistry subscriptionRegistry;
+    private final FanOutShards fanOutShards;
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                        AbstractSubscribableChannel clientOutboundChannel) {
+        return sessionRegistry.newSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+    }
+
+    @Bean
+    @Nullable
+    @Override
+    public AbstractBrokerMessageHandler simpleBrokerMessageHandler(AbstractSubscribableChannel clientInboundChannel,
+                                                                   AbstractSubscribableChannel clientOutboundChannel,
+                                                                   AbstractSubscribableChannel brokerChannel,
+                                                                   UserDestinationResolver userDestinationResolver) {
+        AbstractBrokerMessageHandler configured = super.simpleBrokerMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel, userDestinationResolver);
+        if (!(configured instanceof SimpleBrokerMessageHandler simpleBroker)) {
+            return configured;
+        }
+
+        // Carry over what WebSocketConfig registered on the simple broker (prefixes, heartbeats)
+        ShardedBrokerMessageHandler handler = new ShardedBrokerMessageHandler(clientInboundChannel,
+                clientOutboundChannel, brokerChannel, simpleBroker.getDestinationPrefixes(), fanOutShards);
+        handler.setSubscriptionRegistry(subscriptionRegistry);
+        handler.setTaskScheduler(simpleBroker.getTaskScheduler());
+        handler.setHeartbeatValue(simpleBroker.getHeartbeatValue());
+        handler.setPreservePublishOrder(simpleBroker.isPreservePublishOrder());
+        return handler;
+    }
+}
@@ -12,17 +12,16 @@ import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.web.socket.messaging.StompSubProtocolErrorHandler;
 
 /**
- * WebSocket configuration for STOMP messaging
+ * WebSocket configuration for STOMP messaging.
+ * Broker infrastructure is imported through {@link WebSocketBrokerConfig}.
  */
 @Configuration
-@EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
@@ -48,6 +47,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
+        // Backed by ShardedBrokerMessageHandler, see WebSocketBrokerConfig
         registry.enableSimpleBroker("/topic", "/queue")
                 .setTaskScheduler(heartBeatScheduler())
                 .setHeartbeatValue(new long[]{10000, 10000});
@@ -8,7 +8,10 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.demows.dto.ApiResponse;
+import org.example.demows.dto.ChatConversationDto;
+import org.example.demows.dto.ChatConversationPageDto;
 import org.example.demows.dto.ChatMessageDto;
+import org.example.demows.dto.ChatReadReceiptDto;
 import org.example.demows.dto.ChatRequestDto;
 import org.example.demows.entity.User;
 import org.example.demows.service.ChatService;
@@ -18,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -30,12 +34,13 @@ public class ChatController {
     private final ChatService chatService;
 
     @GetMapping("/conversations")
-    @Operation(summary = "Get user's chat conversations", description = "Retrieves all chat conversations for the current user")
-    public ResponseEntity<ApiResponse<List<ChatMessageDto>>> getUserChats(@AuthenticationPrincipal User user) {
+    @Operation(summary = "Get user's chat conversations",
+            description = "Retrieves the current user's inbox: the last message and unread count of every conversation, most recent first")
+    public ResponseEntity<ApiResponse<List<ChatConversationDto>>> getUserChats(@AuthenticationPrincipal User user) {
         log.info("Fetching chat conversations for user: {}", user.getUsername());
-        List<ChatMessageDto> chats = chatService.getUserChats(user.getUsername());
+        List<ChatConversationDto> chats = chatService.getUserChats(user.getUsername());
         
-        return ResponseEntity.ok(ApiResponse.<List<ChatMessageDto>>builder()
+        return ResponseEntity.ok(ApiResponse.<List<ChatConversationDto>>builder()
                 .success(true)
                 .message("Chat conversations retrieved successfully")
                 .data(chats)
@@ -44,16 +49,21 @@ public class ChatController {
     }
 
     @GetMapping("/conversation/{otherUsername}")
-    @Operation(summary = "Get conversation with specific user", description = "Retrieves conversation between current user and specified user")
-    public ResponseEntity<ApiResponse<List<ChatMessageDto>>> getConversation(
+    @Operation(summary = "Get conversation with specific user",
+            description = "Retrieves one page of the conversation between current user and specified user, newest first")
+    public ResponseEntity<ApiResponse<ChatConversationPageDto>> getConversation(
             @AuthenticationPrincipal User user,
             @Parameter(description = "Username of the other person in conversation", example = "john")
-            @PathVariable String otherUsername) {
+            @PathVariable String otherUsername,
+            @Parameter(description = "Cursor from the previous page (nextCursor); omit for the newest page", example = "120")
+            @RequestParam(required = false) Long before,
+            @Parameter(description = "Page size (default 50, max 200)", example = "50")
+            @RequestParam(required = false) Integer limit) {
         
-        log.info("Fetching conversation between {} and {}", user.getUsername(), otherUsername);
-        List<ChatMessageDto> conversation = chatService.getConversation(user.getUsername(), otherUsername);
+        log.info("Fetching conversation between {} and {} [before: {}]", user.getUsername(), otherUsername, before);
+        ChatConversationPageDto conversation = chatService.getConversation(user.getUsername(), otherUsername, before, limit);
         
-        return ResponseEntity.ok(ApiResponse.<List<ChatMessageDto>>builder()
+        return ResponseEntity.ok(ApiResponse.<ChatConversationPageDto>builder()
                 .success(true)
                 .message("Conversation retrieved successfully")
                 .data(conversation)
@@ -97,19 +107,20 @@ public class ChatController {
     }
 
     @PutMapping("/conversation/{otherUsername}/read")
-    @Operation(summary = "Mark conversation as read", description = "Marks all messages in a conversation as read")
-    public ResponseEntity<ApiResponse<List<ChatMessageDto>>> markConversationAsRead(
+    @Operation(summary = "Mark conversation as read",
+            description = "Marks all messages in a conversation as read and returns the read receipt (count and highest message id)")
+    public ResponseEntity<ApiResponse<ChatReadReceiptDto>> markConversationAsRead(
             @AuthenticationPrincipal User user,
             @Parameter(description = "Username of the other person in conversation", example = "john")
             @PathVariable String otherUsername) {
         
         log.info("Marking conversation between {} and {} as read", user.getUsername(), otherUsername);
-        List<ChatMessageDto> updatedMessages = chatService.markConversationAsRead(user.getUsername(), otherUsername);
+        ChatReadReceiptDto receipt = chatService.markConversationAsRead(user.getUsername(), otherUsername);
         
-        return ResponseEntity.ok(ApiResponse.<List<ChatMessageDto>>builder()
+        return ResponseEntity.ok(ApiResponse.<ChatReadReceiptDto>builder()
                 .success(true)
                 .message("Conversation marked as read")
-                .data(updatedMessages)
+                .data(receipt)
                 .timestamp(LocalDateTime.now())
                 .build());
     }
@@ -128,6 +139,20 @@ public class ChatController {
                 .build());
     }
 
+    @GetMapping("/unread")
+    @Operation(summary = "Get all unread badges", description = "Retrieves the unread message count per sender, for every sender with unread messages")
+    public ResponseEntity<ApiResponse<Map<String, Long>>> getUnreadMessageCounts(@AuthenticationPrincipal User user) {
+        log.debug("Fetching unread badges for user: {}", user.getUsername());
+        Map<String, Long> counts = chatService.getUnreadMessageCounts(user.getUsername());
+        
+        return ResponseEntity.ok(ApiResponse.<Map<String, Long>>builder()
+                .success(true)
+                .message("Unread message counts retrieved successfully")
+                .data(counts)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
     @GetMapping("/unread/{otherUsername}")
     @Operation(summary = "Get unread message count", description = "Retrieves count of unread messages from a specific user")
     public ResponseEntity<ApiResponse<Long>> getUnreadMessageCount(
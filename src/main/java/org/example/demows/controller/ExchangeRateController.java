@@ -6,6 +6,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ExchangeRateCandleDto;
 import org.example.demows.dto.ExchangeRateDto;
 import org.example.demows.service.ExchangeRateService;
 import org.springframework.http.ResponseEntity;
@@ -47,6 +48,22 @@ public class ExchangeRateController {
         return ResponseEntity.ok(exchangeRate);
     }
 
+    @GetMapping("/{fromCurrency}/{toCurrency}/candles")
+    @Operation(summary = "Get exchange rate candles", description = "Retrieves the most recent OHLC candles for a currency pair, oldest first")
+    public ResponseEntity<List<ExchangeRateCandleDto>> getCandles(
+            @Parameter(description = "Source currency code (e.g., USD)", example = "USD")
+            @PathVariable String fromCurrency,
+            @Parameter(description = "Target currency code (e.g., EUR)", example = "EUR")
+            @PathVariable String toCurrency,
+            @Parameter(description = "Candle interval: 1m, 5m, 1h or 1d", example = "1m")
+            @RequestParam(defaultValue = "1m") String interval,
+            @Parameter(description = "Maximum number of candles", example = "100")
+            @RequestParam(defaultValue = "100") int limit) {
+        log.info("Request to get {} candles from {} to {}", interval, fromCurrency, toCurrency);
+        List<ExchangeRateCandleDto> candles = exchangeRateService.getCandles(fromCurrency, toCurrency, interval, limit);
+        return ResponseEntity.ok(candles);
+    }
+
     @PutMapping("/{fromCurrency}/{toCurrency}")
     @Operation(summary = "Update exchange rate", description = "Updates exchange rate for specific currency pair")
     public ResponseEntity<ExchangeRateDto> updateExchangeRate(
@@ -0,0 +1,59 @@
+package org.example.demows.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ApiResponse;
+import org.example.demows.dto.BroadcastNotificationRequest;
+import org.example.demows.dto.NotificationBroadcastDto;
+import org.example.demows.entity.User;
+import org.example.demows.service.NotificationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/admin/notifications/broadcasts")
+@RequiredArgsConstructor
+@PreAuthorize("@notificationBroadcaster.isAdmin(authentication.name)")
+@Tag(name = "Notification Broadcasts", description = "Admin APIs sending one notification to many users")
+@SecurityRequirement(name = "bearerAuth")
+@Slf4j
+public class NotificationBroadcastController {
+    private final NotificationService notificationService;
+
+    @PostMapping
+    @Operation(summary = "Start a broadcast",
+            description = "Sends a notification to the listed users, a registration-date segment or all active users, in the background")
+    public ResponseEntity<ApiResponse<NotificationBroadcastDto>> broadcast(@AuthenticationPrincipal User user,
+                                                                           @Valid @RequestBody BroadcastNotificationRequest request){
+        NotificationBroadcastDto broadcast = notificationService.broadcastNotification(user.getUsername(), request);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.<NotificationBroadcastDto>builder()
+                .success(true)
+                .message("Notification broadcast started")
+                .data(broadcast)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
+    @GetMapping("/{broadcastId}")
+    @Operation(summary = "Get broadcast progress", description = "Retrieves the status and number of recipients reached so far")
+    public ResponseEntity<ApiResponse<NotificationBroadcastDto>> getBroadcast(@PathVariable String broadcastId){
+        NotificationBroadcastDto broadcast = notificationService.getBroadcast(broadcastId);
+
+        return ResponseEntity.ok(ApiResponse.<NotificationBroadcastDto>builder()
+                .success(true)
+                .message("Notification broadcast retrieved successfully")
+                .data(broadcast)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+}
@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.example.demows.dto.ApiResponse;
 import org.example.demows.dto.CreateNotificationRequest;
 import org.example.demows.dto.NotificationDto;
+import org.example.demows.dto.NotificationPageDto;
 import org.example.demows.entity.User;
 import org.example.demows.service.NotificationService;
 import org.springframework.http.ResponseEntity;
@@ -16,7 +17,6 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -28,10 +28,13 @@ public class NotificationController {
     private final NotificationService notificationService;
 
 
+    // One page of the feed, newest first; pass nextCursor as before for older notifications
     @GetMapping
-    public ResponseEntity<ApiResponse<List<NotificationDto>>> getUserNotifications(@AuthenticationPrincipal User user){
-        List<NotificationDto> notifications = notificationService.getUserNotifications(user.getUsername());
-        return ResponseEntity.ok(ApiResponse.<List<NotificationDto>>builder()
+    public ResponseEntity<ApiResponse<NotificationPageDto>> getUserNotifications(@AuthenticationPrincipal User user,
+                                                                                 @RequestParam(required = false) String before,
+                                                                                 @RequestParam(required = false) Integer limit){
+        NotificationPageDto notifications = notificationService.getUserNotifications(user.getUsername(), before, limit);
+        return ResponseEntity.ok(ApiResponse.<NotificationPageDto>builder()
                 .success(true)
                 .message("Notifications retrieved successfully")
                 .data(notifications)
@@ -39,6 +42,17 @@ public class NotificationController {
                 .build());
     }
 
+    @GetMapping("/unread-count")
+    public ResponseEntity<ApiResponse<Long>> getUnreadCount(@AuthenticationPrincipal User user){
+        long count = notificationService.getUnreadCount(user.getUsername());
+        return ResponseEntity.ok(ApiResponse.<Long>builder()
+                .success(true)
+                .message("Unread notification count retrieved successfully")
+                .data(count)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
     @PostMapping
     public ResponseEntity<ApiResponse<NotificationDto>> createNotification(@AuthenticationPrincipal User user,@Valid @RequestBody CreateNotificationRequest request){
         NotificationDto notification = notificationService
@@ -1,5 +1,7 @@
 package org.example.demows.controller;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.demows.dto.*;
@@ -9,6 +11,8 @@ import org.example.demows.dto.WebSocketMessageType;
 import org.example.demows.service.NotificationService;
 import org.example.demows.service.PromotionService;
 import org.example.demows.service.ChatService;
+import org.example.demows.websocket.ChatPresence;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
@@ -17,8 +21,11 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * WebSocket controller for handling real-time messaging
@@ -32,18 +39,27 @@ public class WebSocketController {
     private final PromotionService promotionService;
     private final NotificationService notificationService;
     private final ChatService chatService;
+    private final ChatPresence chatPresence;
+    private final Validator validator;
 
-    @MessageMapping("/exchange-rates/subscribe")
-    @SendTo("/topic/exchange-rates")
-    public WebSocketMessage<List<ExchangeRateDto>> subscribeToExchangeRates(SimpMessageHeaderAccessor headerAccessor) {
+    /**
+     * Sends the current exchange-rate snapshot to the requesting session only.
+     * Clients call this after subscribing to /topic/exchange-rates (or a per-pair destination such as
+     * /topic/exchange-rates/USD-EUR) and again whenever they detect a sequence gap.
+     * An optional {@code pairs} header (e.g. {@code USD-EUR,GBP-*}) limits the snapshot to those pairs.
+     */
+    @MessageMapping({"/exchange-rates/subscribe", "/exchange-rates/snapshot"})
+    @SendToUser("/queue/exchange-rates")
+    public WebSocketMessage<ExchangeRateTickDto> subscribeToExchangeRates(SimpMessageHeaderAccessor headerAccessor) {
         String username = headerAccessor.getUser() != null ? headerAccessor.getUser().getName() : "anonymous";
-        log.info("User {} subscribed to exchange rates", username);
+        String pairs = headerAccessor.getFirstNativeHeader("pairs");
+        log.info("User {} requested exchange rates snapshot [pairs: {}]", username, pairs);
         
-        List<ExchangeRateDto> exchangeRates = exchangeRateService.getAllExchangeRates();
+        ExchangeRateTickDto snapshot = exchangeRateService.getExchangeRateSnapshot(pairs);
         
-        return WebSocketMessage.<List<ExchangeRateDto>>builder()
-                .type(WebSocketMessageType.EXCHANGE_RATES_INITIAL.name())
-                .data(exchangeRates)
+        return WebSocketMessage.<ExchangeRateTickDto>builder()
+                .type(WebSocketMessageType.EXCHANGE_RATES_SNAPSHOT.name())
+                .data(snapshot)
                 .timestamp(LocalDateTime.now().toString())
                 .build();
     }
@@ -147,8 +163,22 @@ public class WebSocketController {
                         .build();
             }
 
-            List<NotificationDto> notifications = notificationService
-                    .getUserNotifications(username);
+            // A resubscribing client only gets what changed after the last sequence number it saw
+            Long sinceSeq = parseHeader(headerAccessor.getFirstNativeHeader("since-seq"), Long::valueOf);
+            if (sinceSeq != null) {
+                NotificationReplayDto replay = notificationService.replayNotifications(username, sinceSeq);
+                if (replay != null) {
+                    return WebSocketMessage.builder()
+                            .type(WebSocketMessageType.NOTIFICATIONS_REPLAY.name())
+                            .data(replay)
+                            .timestamp(LocalDateTime.now().toString())
+                            .build();
+                }
+            }
+
+            // Only the newest page (and the unread count); older pages are requested on demand
+            NotificationPageDto notifications = notificationService
+                    .getUserNotifications(username, null, parseHeader(headerAccessor.getFirstNativeHeader("limit"), Integer::valueOf));
 
             return WebSocketMessage.builder()
                     .type(WebSocketMessageType.NOTIFICATIONS_INITIAL.name())
@@ -175,6 +205,55 @@ public class WebSocketController {
         }
     }
 
+    @MessageMapping("/notifications/page")
+    @SendToUser("/queue/notifications")
+    public WebSocketMessage<?> getNotificationPage(SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        log.info("Notification page request received [SessionId: {}]", sessionId);
+
+        String username = "anonymous";
+        try {
+            if (headerAccessor.getUser() != null) {
+                username = headerAccessor.getUser().getName();
+            } else {
+                log.warn("Anonymous user attempted to get notifications [SessionId: {}]", sessionId);
+                WebSocketErrorResponse errorResponse = WebSocketErrorResponse.authenticationError(sessionId);
+                return WebSocketMessage.builder()
+                        .type(WebSocketMessageType.ERROR.name())
+                        .data(errorResponse)
+                        .timestamp(LocalDateTime.now().toString())
+                        .build();
+            }
+
+            String before = parseHeader(headerAccessor.getFirstNativeHeader("before"), Function.identity());
+            Integer limit = parseHeader(headerAccessor.getFirstNativeHeader("limit"), Integer::valueOf);
+            NotificationPageDto notifications = notificationService.getUserNotifications(username, before, limit);
+
+            return WebSocketMessage.builder()
+                    .type(WebSocketMessageType.NOTIFICATIONS_PAGE.name())
+                    .data(notifications)
+                    .timestamp(LocalDateTime.now().toString())
+                    .build();
+        } catch (Exception e) {
+            log.error("Error loading notifications for user {}", username, e);
+
+            return WebSocketMessage.builder()
+                    .type("ERROR")
+                    .data(WebSocketErrorResponse.builder()
+                            .traceId(UUID.randomUUID().toString())
+                            .type("NOTIFICATION_PAGE_ERROR")
+                            .error("Notification page failed")
+                            .message("Failed to load notifications")
+                            .suggestion("Please try again or contact support")
+                            .timestamp(LocalDateTime.now())
+                            .sessionId(sessionId)
+                            .username(username)
+                            .build())
+                    .timestamp(LocalDateTime.now().toString())
+                    .build();
+        }
+    }
+
     @MessageMapping("/chat/subscribe")
     @SendToUser("/queue/chat")
     public WebSocketMessage<?> subscribeToChat(SimpMessageHeaderAccessor headerAccessor) {
@@ -196,7 +275,7 @@ public class WebSocketController {
                         .build();
             }
 
-            List<ChatMessageDto> conversations = chatService.getUserChats(username);
+            List<ChatConversationDto> conversations = chatService.getUserChats(username);
 
             return WebSocketMessage.builder()
                     .type(WebSocketMessageType.CHAT_CONVERSATIONS_INITIAL.name())
@@ -240,6 +319,19 @@ public class WebSocketController {
                         .build();
             }
 
+            // Same constraints as the REST endpoint (@Valid)
+            String violations = validator.validate(request).stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining("; "));
+            if (!violations.isEmpty()) {
+                log.warn("Rejected chat message from {}: {} [SessionId: {}]", username, violations, sessionId);
+                return WebSocketMessage.builder()
+                        .type(WebSocketMessageType.ERROR.name())
+                        .data(WebSocketErrorResponse.validationError(sessionId, username, violations))
+                        .timestamp(LocalDateTime.now().toString())
+                        .build();
+            }
+
             ChatMessageDto sentMessage = chatService.sendMessage(username, request);
 
             return WebSocketMessage.builder()
@@ -263,9 +355,13 @@ public class WebSocketController {
         }
     }
 
+    /**
+     * Sends one page of the conversation, newest first. Optional {@code before} (cursor from the previous page)
+     * and {@code limit} headers select the page, so a long history never goes out as one oversized frame.
+     */
     @MessageMapping("/chat/conversation/{otherUsername}")
     @SendToUser("/queue/chat")
-    public WebSocketMessage<?> getConversation(String otherUsername, SimpMessageHeaderAccessor headerAccessor) {
+    public WebSocketMessage<?> getConversation(@DestinationVariable String otherUsername, SimpMessageHeaderAccessor headerAccessor) {
         String sessionId = headerAccessor.getSessionId();
         log.info("Chat conversation request received for {} [SessionId: {}]", otherUsername, sessionId);
 
@@ -284,10 +380,12 @@ public class WebSocketController {
                         .build();
             }
 
-            List<ChatMessageDto> conversation = chatService.getConversation(username, otherUsername);
+            Long before = parseHeader(headerAccessor.getFirstNativeHeader("before"), Long::valueOf);
+            Integer limit = parseHeader(headerAccessor.getFirstNativeHeader("limit"), Integer::valueOf);
+            ChatConversationPageDto conversation = chatService.getConversation(username, otherUsername, before, limit);
 
             return WebSocketMessage.builder()
-                    .type("CHAT_CONVERSATION_LOADED")
+                    .type(WebSocketMessageType.CHAT_CONVERSATION_LOADED.name())
                     .data(conversation)
                     .timestamp(LocalDateTime.now().toString())
                     .build();
@@ -306,6 +404,54 @@ public class WebSocketController {
                     .build();
         }
     }
+
+    /**
+     * Typing indicator, fire-and-forget: coalesced and delivered to the receiver's {@code /user/queue/presence}
+     * without going through the chat service, the database or Kafka.
+     */
+    @MessageMapping("/chat/typing")
+    public void typing(ChatTypingDto request, SimpMessageHeaderAccessor headerAccessor) {
+        if (headerAccessor.getUser() == null || request.getReceiverUsername() == null) {
+            return;
+        }
+        chatPresence.typing(headerAccessor.getUser().getName(), request.getReceiverUsername(), request.isTyping());
+    }
+
+    /**
+     * Follows the presence of the users in the comma-separated {@code users} header (replacing the previous list):
+     * answers with their current presence and sends every later change to {@code /user/queue/presence}.
+     */
+    @MessageMapping("/chat/presence")
+    @SendToUser(ChatPresence.PRESENCE_QUEUE)
+    public WebSocketMessage<?> watchPresence(SimpMessageHeaderAccessor headerAccessor) {
+        String sessionId = headerAccessor.getSessionId();
+        if (headerAccessor.getUser() == null) {
+            log.warn("Anonymous user attempted to watch presence [SessionId: {}]", sessionId);
+            return WebSocketMessage.builder()
+                    .type(WebSocketMessageType.ERROR.name())
+                    .data(WebSocketErrorResponse.authenticationError(sessionId))
+                    .timestamp(LocalDateTime.now().toString())
+                    .build();
+        }
+
+        String users = headerAccessor.getFirstNativeHeader("users");
+        List<String> usernames = users == null ? List.of() : Arrays.stream(users.split(","))
+                .map(String::trim)
+                .filter(username -> !username.isEmpty())
+                .toList();
+        List<PresenceDto> presence = chatPresence.watch(headerAccessor.getUser().getName(), usernames);
+
+        return WebSocketMessage.builder()
+                .type(WebSocketMessageType.PRESENCE_SNAPSHOT.name())
+                .data(presence)
+                .timestamp(LocalDateTime.now().toString())
+                .build();
+    }
+
+    // Optional numeric STOMP header; a malformed value fails the request like any other error
+    private static <T> T parseHeader(String value, Function<String, T> parser) {
+        return value == null || value.isBlank() ? null : parser.apply(value.trim());
+    }
     /*public WebSocketMessage<?> subscribeToNotifications(
             @AuthenticationPrincipal User user) {
         log.info("User {} subscribed to notifications", user.getUsername());
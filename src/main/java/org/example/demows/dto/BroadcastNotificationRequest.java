@@ -0,0 +1,39 @@
+package org.example.demows.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One notification for many users: the listed ones ({@code USERS}), the users registered within a time range
+ * ({@code SEGMENT}, either bound optional) or every active user ({@code ALL}).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastNotificationRequest {
+    @NotBlank
+    private String title;
+    @NotBlank
+    private String message;
+    @NotBlank
+    private String type;
+    private String priority;
+
+    @NotNull
+    private Target target;
+    private List<String> usernames;
+    private LocalDateTime registeredAfter;
+    private LocalDateTime registeredBefore;
+
+    public enum Target {
+        USERS, SEGMENT, ALL
+    }
+}
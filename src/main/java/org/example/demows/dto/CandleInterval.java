@@ -0,0 +1,51 @@
+package org.example.demows.dto;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Supported OHLC candle intervals. Buckets are aligned to the epoch, so daily candles start at UTC midnight.
+ * {@code capacity} is how many of the most recent candles are kept in memory per pair.
+ */
+public enum CandleInterval {
+    ONE_MINUTE("1m", Duration.ofMinutes(1), 1440),
+    FIVE_MINUTES("5m", Duration.ofMinutes(5), 576),
+    ONE_HOUR("1h", Duration.ofHours(1), 336),
+    ONE_DAY("1d", Duration.ofDays(1), 365);
+
+    private final String code;
+    private final long widthMillis;
+    private final int capacity;
+
+    CandleInterval(String code, Duration width, int capacity) {
+        this.code = code;
+        this.widthMillis = width.toMillis();
+        this.capacity = capacity;
+    }
+
+    @JsonValue
+    public String getCode() {
+        return code;
+    }
+
+    public long getWidthMillis() {
+        return widthMillis;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static CandleInterval fromCode(String code) {
+        for (CandleInterval interval : values()) {
+            if (interval.code.equalsIgnoreCase(code)) {
+                return interval;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported candle interval '%s', expected one of %s", code,
+                Arrays.stream(values()).map(CandleInterval::getCode).collect(Collectors.joining(", "))));
+    }
+}
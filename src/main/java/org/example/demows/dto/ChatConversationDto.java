@@ -0,0 +1,22 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Inbox entry: the last message of a conversation and how many messages the user has not read yet.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatConversationDto {
+    private String otherUsername;
+    private Long lastMessageId;
+    private String lastSenderUsername;
+    private String lastMessagePreview;
+    private String lastMessageAt;
+    private long unreadCount;
+}
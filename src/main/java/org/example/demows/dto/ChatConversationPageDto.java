@@ -0,0 +1,23 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a conversation, newest message first.
+ * Pass {@code nextCursor} as {@code before} to load the next (older) page; it is {@code null} on the last page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatConversationPageDto {
+    private String otherUsername;
+    private List<ChatMessageDto> messages;
+    private Long nextCursor;
+    private boolean hasMore;
+}
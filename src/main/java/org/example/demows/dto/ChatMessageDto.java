@@ -19,4 +19,6 @@ public class ChatMessageDto {
     private boolean isRead;
     private String readAt;
     private boolean isDeleted;
+    // Only set on the echo and fan-out of a send that carried one
+    private String clientMessageId;
 }
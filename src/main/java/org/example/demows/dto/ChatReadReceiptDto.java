@@ -0,0 +1,22 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregated read receipt ({@code CHAT_READ_UPTO}): {@code readerUsername} has read every message
+ * {@code senderUsername} sent them up to and including {@code upToMessageId}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatReadReceiptDto {
+    private String readerUsername;
+    private String senderUsername;
+    private Long upToMessageId;
+    private long readCount;
+    private String readAt;
+}
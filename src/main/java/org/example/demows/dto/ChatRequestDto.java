@@ -1,6 +1,8 @@
 package org.example.demows.dto;
 
-
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,6 +13,16 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatRequestDto {
+    @NotBlank(message = "Receiver is required")
     private String receiverUsername;
+
+    @NotBlank(message = "Message is required")
+    @Size(max = 4000, message = "Message must be at most 4000 characters")
+    @Pattern(regexp = "[^\\u0000]*", message = "Message must not contain NUL characters")
     private String message;
+
+    // Optional, generated by the client once per message and sent again on every retry of it
+    @Size(max = 64, message = "Client message id must be at most 64 characters")
+    @Pattern(regexp = "[A-Za-z0-9._:-]+", message = "Client message id may only contain letters, digits and . _ : -")
+    private String clientMessageId;
 }
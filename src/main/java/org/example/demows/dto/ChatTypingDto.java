@@ -0,0 +1,20 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Typing indicator: sent by a client to {@code /app/chat/typing} (receiver and state only) and
+ * delivered, coalesced, to the receiver's {@code /user/queue/presence} with the sender filled in.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatTypingDto {
+    private String senderUsername;
+    private String receiverUsername;
+    private boolean typing;
+}
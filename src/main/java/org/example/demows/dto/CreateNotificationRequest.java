@@ -14,4 +14,6 @@ public class CreateNotificationRequest {
     private String message;
     private String type;
     private String priority;
+    // Optional: replaces the user's unread notification with the same key instead of adding one
+    private String collapseKey;
 }
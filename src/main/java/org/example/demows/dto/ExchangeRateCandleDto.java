@@ -0,0 +1,41 @@
+package org.example.demows.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for one OHLC candle of a currency pair
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRateCandleDto {
+
+    private String fromCurrency;
+    private String toCurrency;
+    private CandleInterval interval;
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime openTime;
+    // Fixed-point, see FixedPointRate
+    @JsonSerialize(using = FixedPointRate.Serializer.class)
+    @JsonDeserialize(using = FixedPointRate.Deserializer.class)
+    private long open;
+    @JsonSerialize(using = FixedPointRate.Serializer.class)
+    @JsonDeserialize(using = FixedPointRate.Deserializer.class)
+    private long high;
+    @JsonSerialize(using = FixedPointRate.Serializer.class)
+    @JsonDeserialize(using = FixedPointRate.Deserializer.class)
+    private long low;
+    @JsonSerialize(using = FixedPointRate.Serializer.class)
+    @JsonDeserialize(using = FixedPointRate.Deserializer.class)
+    private long close;
+    private int ticks;
+}
@@ -1,12 +1,13 @@
 package org.example.demows.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
@@ -21,7 +22,19 @@ public class ExchangeRateDto {
     private Long id;
     private String fromCurrency;
     private String toCurrency;
-    private BigDecimal rate;
+    // Fixed-point, see FixedPointRate; serialized as a plain JSON number
+    @JsonSerialize(using = FixedPointRate.Serializer.class)
+    @JsonDeserialize(using = FixedPointRate.Deserializer.class)
+    private long rate;
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime lastUpdated;
+    // Derived from quoted pairs (cross rate), not quoted itself; such rates have no id
+    private boolean implied;
+
+    /**
+     * Currency pair key, e.g. {@code USD-EUR}. Used as the conflation key for market-data frames.
+     */
+    public String pairKey() {
+        return fromCurrency + "-" + toCurrency;
+    }
 }
@@ -0,0 +1,37 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.demows.websocket.Conflatable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sequenced exchange-rate frame.
+ * A delta carries only the pairs changed between {@code fromSequence} and {@code sequence} (equal for a
+ * single tick, a range once conflated); a client applies it when {@code fromSequence <= lastSequence + 1}
+ * and requests a new snapshot otherwise. A snapshot has {@code fromSequence = 0} and carries every pair.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRateTickDto implements Conflatable<ExchangeRateTickDto> {
+
+    private long fromSequence;
+    private long sequence;
+    private List<ExchangeRateDto> rates;
+
+    @Override
+    public ExchangeRateTickDto conflate(ExchangeRateTickDto newer) {
+        Map<String, ExchangeRateDto> merged = new LinkedHashMap<>();
+        rates.forEach(rate -> merged.put(rate.pairKey(), rate));
+        newer.getRates().forEach(rate -> merged.put(rate.pairKey(), rate));
+        return new ExchangeRateTickDto(fromSequence, newer.getSequence(), new ArrayList<>(merged.values()));
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.demows.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exchange rates as fixed-point {@code long}s with 6 decimal places (the scale of {@code exchange_rates.rate}),
+ * e.g. {@code 1.085} is {@code 1_085_000}. Rates stay in this form from tick generation to the JSON writer;
+ * {@link BigDecimal} is only used at the REST input and database boundaries.
+ */
+public final class FixedPointRate {
+
+    public static final int SCALE = 6;
+    public static final long ONE = 1_000_000L;
+    public static final long CENT = ONE / 100;
+    // Largest rate exchange_rates.rate (NUMERIC(10, 6)) holds: 9999.999999
+    public static final long MAX = 10_000 * ONE - 1;
+
+    // Always printed with at least this many decimals, e.g. 110.5 -> 110.50
+    private static final int MIN_FRACTION_DIGITS = 2;
+    private static final ThreadLocal<char[]> FORMAT_BUFFER = ThreadLocal.withInitial(() -> new char[24]);
+
+    private FixedPointRate() {
+    }
+
+    public static long fromBigDecimal(BigDecimal rate) {
+        return rate.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long rate) {
+        return BigDecimal.valueOf(rate, SCALE);
+    }
+
+    /**
+     * Rounds half-up (away from zero) to a multiple of {@code unit}, e.g. {@link #CENT}.
+     */
+    public static long round(long rate, long unit) {
+        long half = unit / 2;
+        return rate >= 0 ? (rate + half) / unit * unit : -((-rate + half) / unit * unit);
+    }
+
+    public static String toString(long rate) {
+        char[] buffer = FORMAT_BUFFER.get();
+        int start = format(rate, buffer);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    // Writes the plain decimal form right-aligned into the buffer and returns its start offset
+    private static int format(long rate, char[] buffer) {
+        int pos = buffer.length;
+        long integer = Math.abs(rate / ONE);
+        long fraction = Math.abs(rate % ONE);
+
+        int digits = SCALE;
+        while (digits > MIN_FRACTION_DIGITS && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        for (int i = 0; i < digits; i++) {
+            buffer[--pos] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        buffer[--pos] = '.';
+        do {
+            buffer[--pos] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (rate < 0) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+
+    /**
+     * Writes the rate as a JSON number straight from the {@code long}, without going through {@link BigDecimal}.
+     */
+    public static class Serializer extends JsonSerializer<Long> {
+
+        @Override
+        public void serialize(Long rate, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            char[] buffer = FORMAT_BUFFER.get();
+            int start = format(rate, buffer);
+            gen.writeNumber(buffer, start, buffer.length - start);
+        }
+    }
+
+    /**
+     * Reads a JSON number (or numeric string) into a fixed-point rate.
+     */
+    public static class Deserializer extends JsonDeserializer<Long> {
+
+        @Override
+        public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_STRING) {
+                return fromBigDecimal(new BigDecimal(p.getText().trim()));
+            }
+            return fromBigDecimal(p.getDecimalValue());
+        }
+    }
+}
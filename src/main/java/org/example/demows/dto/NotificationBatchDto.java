@@ -0,0 +1,50 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One batch of a notification broadcast as published to Kafka: the shared content once, then every
+ * recipient with the id of their notification. Expanded into per-user {@code NOTIFICATION_UPDATE} frames on delivery.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationBatchDto {
+    private String broadcastId;
+    private String title;
+    private String message;
+    private String type;
+    private String priority;
+    private String createdAt;
+    private List<Recipient> recipients;
+
+    // The notification of one recipient, as delivered
+    public NotificationDto toNotification(Recipient recipient) {
+        return NotificationDto.builder()
+                .id(recipient.getNotificationId())
+                .username(recipient.getUsername())
+                .title(title)
+                .message(message)
+                .type(type)
+                .priority(priority)
+                .isRead(false)
+                .createdAt(createdAt)
+                .seq(recipient.getSeq())
+                .build();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Recipient {
+        private String username;
+        private Long notificationId;
+        private Long seq;
+    }
+}
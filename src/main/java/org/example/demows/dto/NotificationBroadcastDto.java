@@ -0,0 +1,24 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a notification broadcast.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationBroadcastDto {
+    private String broadcastId;
+    private String target;
+    private String status; // RUNNING, COMPLETED, FAILED
+    private long recipients;
+    private long batches;
+    private String startedAt;
+    private String finishedAt;
+    private String error;
+}
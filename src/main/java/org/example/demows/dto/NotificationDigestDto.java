@@ -0,0 +1,21 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The LOW priority notifications a user received since their last digest, in sequence order, with the user's
+ * current unread count.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDigestDto {
+    private List<NotificationDto> notifications;
+    private long unreadCount;
+}
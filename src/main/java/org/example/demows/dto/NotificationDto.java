@@ -19,4 +19,5 @@ public class NotificationDto {
     private boolean isRead;
     private String createdAt;
     private String readAt;
+    private Long seq; // per-user, increases with every change of the user's notifications
 }
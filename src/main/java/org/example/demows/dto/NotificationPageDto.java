@@ -0,0 +1,24 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a user's notification feed, newest first, with the user's current unread count.
+ * Pass {@code nextCursor} as {@code before} to load the next (older) page; it is {@code null} on the last page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPageDto {
+    private List<NotificationDto> notifications;
+    private String nextCursor;
+    private boolean hasMore;
+    private long unreadCount;
+    private long lastSeq; // pass as since-seq when resubscribing
+}
@@ -0,0 +1,22 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The notifications that changed after the sequence number a client resubscribed with, in sequence order
+ * (latest state of each), with the user's current unread count.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationReplayDto {
+    private List<NotificationDto> notifications;
+    private long lastSeq;
+    private long unreadCount;
+}
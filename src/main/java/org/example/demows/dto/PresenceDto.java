@@ -0,0 +1,19 @@
+package org.example.demows.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Online state of a user as seen by this node; {@code lastSeen} is set once the user went offline here.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceDto {
+    private String username;
+    private boolean online;
+    private String lastSeen;
+}
@@ -50,6 +50,19 @@ public class WebSocketErrorResponse {
                 .build();
     }
     
+    public static WebSocketErrorResponse validationError(String sessionId, String username, String message) {
+        return WebSocketErrorResponse.builder()
+                .traceId(generateTraceId())
+                .type("VALIDATION_ERROR")
+                .error("Invalid Request")
+                .message(message)
+                .suggestion("Please correct the request and try again")
+                .timestamp(LocalDateTime.now())
+                .sessionId(sessionId)
+                .username(username)
+                .build();
+    }
+    
     public static WebSocketErrorResponse connectionError(String sessionId, String message) {
         return WebSocketErrorResponse.builder()
                 .traceId(generateTraceId())
@@ -8,6 +8,8 @@ public enum WebSocketMessageType {
     // Exchange rates
     EXCHANGE_RATES_INITIAL,
     EXCHANGE_RATE_UPDATE,
+    EXCHANGE_RATES_SNAPSHOT,
+    EXCHANGE_RATE_DELTA,
 
     // Promotions
     PROMOTIONS_INITIAL,
@@ -16,11 +18,23 @@ public enum WebSocketMessageType {
     // Notifications
     NOTIFICATIONS_INITIAL,
     NOTIFICATION_UPDATE,
+    NOTIFICATIONS_PAGE,
+    NOTIFICATIONS_REPLAY,
+    NOTIFICATION_UNREAD_COUNT,
+    NOTIFICATION_BATCH, // Kafka only, delivered as NOTIFICATION_UPDATE frames
+    NOTIFICATION_DIGEST,
 
     // Chat
     CHAT_CONVERSATIONS_INITIAL,
     CHAT_MESSAGE,
     CHAT_MESSAGE_SENT,
+    CHAT_CONVERSATION_LOADED,
+    CHAT_READ_UPTO,
+
+    // Typing and presence (ephemeral)
+    CHAT_TYPING,
+    PRESENCE_SNAPSHOT,
+    PRESENCE_UPDATE,
 
     // Errors
     ERROR
@@ -0,0 +1,43 @@
+package org.example.demows.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Client message id a sender already used, and the chat message it produced. The unique constraint is the
+ * backstop of send deduplication: a send missed by the in-memory window claims its id here before it is
+ * delivered, and a retry finds the original message id instead. Rows are purged once no client would retry
+ * anymore.
+ */
+@Entity
+@Table(name = "chat_client_messages",
+        uniqueConstraints = @UniqueConstraint(name = "uk_chat_client_messages_sender_client_id",
+                columnNames = {"sender_username", "client_message_id"}),
+        indexes = @Index(name = "idx_chat_client_messages_created_at", columnList = "created_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatClientMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sender_username", nullable = false)
+    private String senderUsername;
+
+    @Column(name = "client_message_id", nullable = false, length = 64)
+    private String clientMessageId;
+
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,54 @@
+package org.example.demows.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Inbox entry: one row per user per conversation partner, holding the last message and the user's unread count.
+ * Maintained incrementally by the chat service in the same transaction as the message writes,
+ * so the inbox is read straight from here instead of being aggregated from {@code chat_messages}.
+ */
+@Entity
+@Table(name = "chat_conversations",
+        uniqueConstraints = @UniqueConstraint(name = "uk_chat_conversations_owner_other",
+                columnNames = {"owner_username", "other_username"}),
+        indexes = @Index(name = "idx_chat_conversations_owner_last_message", columnList = "owner_username, last_message_at DESC"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatConversation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_username", nullable = false)
+    private String ownerUsername;
+
+    @Column(name = "other_username", nullable = false)
+    private String otherUsername;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_sender_username", nullable = false)
+    private String lastSenderUsername;
+
+    @Column(name = "last_message_preview", nullable = false)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_at", nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "unread_count", nullable = false)
+    private long unreadCount;
+}
@@ -6,11 +6,17 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 @Entity
 @Data
-@Table(name = "chat_messages")
+@Table(name = "chat_messages",
+        indexes = @Index(name = "idx_chat_messages_conversation_id", columnList = "conversation_id, id"))
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -25,6 +31,10 @@ public class ChatMessage {
     @Column(name = "receiver_username", nullable = false)
     private String receiverUsername;
 
+    // Canonical id of the (unordered) sender/receiver pair, see conversationIdOf
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
     @Column(name = "message", nullable = false, columnDefinition = "TEXT")
     private String message;
 
@@ -48,6 +58,38 @@ public class ChatMessage {
     @Builder.Default
     private boolean isDeleted = false;
 
+    // Echoed back to the sender and on the fan-out; recorded in chat_client_messages, not here
+    @Transient
+    private String clientMessageId;
+
+    @PrePersist
+    protected void onCreate() {
+        if (conversationId == null) {
+            conversationId = conversationIdOf(senderUsername, receiverUsername);
+        }
+    }
+
+    /**
+     * Canonical conversation id of two users, the same for both directions: the first 8 bytes of
+     * SHA-256(low + NUL + high), where low/high order the usernames by their UTF-8 bytes.
+     * Must stay in sync with the backfill in V3__Add_chat_conversation_id.sql. Being a hash, it is not
+     * unique on its own, so queries keep a participant check next to it.
+     */
+    public static long conversationIdOf(String username, String otherUsername) {
+        byte[] a = username.getBytes(StandardCharsets.UTF_8);
+        byte[] b = otherUsername.getBytes(StandardCharsets.UTF_8);
+        boolean ordered = Arrays.compareUnsigned(a, b) <= 0;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ordered ? a : b);
+            digest.update((byte) 0);
+            digest.update(ordered ? b : a);
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     public enum MessageType {
         TEXT, IMAGE, FILE, SYSTEM
     }
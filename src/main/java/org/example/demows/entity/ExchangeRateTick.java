@@ -0,0 +1,41 @@
+package org.example.demows.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Append-only exchange rate tick history, one row per changed pair per tick.
+ * Rows are written in batches by the tick history store, never updated.
+ */
+@Entity
+@Table(name = "exchange_rate_ticks",
+        indexes = {
+                @Index(name = "idx_exchange_rate_ticks_rate_time", columnList = "rate_id, recorded_at"),
+                // BRIN in the migration
+                @Index(name = "idx_exchange_rate_ticks_recorded_at", columnList = "recorded_at")
+        })
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRateTick {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "rate_id", nullable = false)
+    private Long rateId;
+
+    @Column(nullable = false, precision = 10, scale = 6)
+    private BigDecimal rate;
+
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+}
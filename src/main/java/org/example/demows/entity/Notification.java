@@ -7,7 +7,11 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name = "notifications")
+@Table(name = "notifications",
+        indexes = {
+                @Index(name = "idx_notifications_user_feed", columnList = "user_id, is_active, created_at DESC, id DESC"),
+                @Index(name = "idx_notifications_user_seq", columnList = "user_id, seq")
+        })
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,4 +34,13 @@ public class Notification {
     private LocalDateTime createdAt;
     private LocalDateTime readAt;
 
+    // Per-user sequence number of the last change (create, read), see NotificationSequencer (null while digest pending)
+    private Long seq;
+
+    // Set by the sender: a later notification with the same key replaces this one while it is unread
+    private String collapseKey;
+    // LOW priority, created but not pushed yet: goes out with the user's next digest
+    @Column(nullable = false)
+    private boolean digestPending;
+
 }
@@ -0,0 +1,38 @@
+package org.example.demows.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Notification frame waiting to be published to the {@code notifications} topic. Written in the same transaction
+ * as the notification change it reports, and deleted by the outbox relay once Kafka acknowledged it, so a crash
+ * between commit and publish delays delivery instead of losing it.
+ */
+@Entity
+@Table(name = "notification_outbox")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Recipient (broadcast-{id} for a broadcast batch): the Kafka record key, so a user's frames stay in order on one partition
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    // WebSocketMessage JSON as delivered to the user
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
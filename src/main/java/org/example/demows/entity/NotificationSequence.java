@@ -0,0 +1,27 @@
+package org.example.demows.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last notification sequence number handed out to a user. Advanced atomically by
+ * {@code NotificationSequencer}, in the transaction of the notification change that takes the number.
+ */
+@Entity
+@Table(name = "notification_sequences")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationSequence {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+}
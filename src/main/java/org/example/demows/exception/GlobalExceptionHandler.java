@@ -5,6 +5,7 @@ import org.example.demows.dto.ApiResponse;
 import org.example.demows.dto.ErrorResponse;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.validation.FieldError;
@@ -122,6 +123,42 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error("Validation failed", errorResponse));
     }
 
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ApiResponse<ErrorResponse>> handleIllegalArgumentException(IllegalArgumentException ex) {
+        String traceId = generateTraceId();
+        log.error("Invalid argument [TraceId: {}]: {}", traceId, ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .traceId(traceId)
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.BAD_REQUEST.value())
+                .error("Bad Request")
+                .message(ex.getMessage())
+                .suggestion("Please check the request parameters and try again")
+                .build();
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("Invalid request", errorResponse));
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ApiResponse<ErrorResponse>> handleAccessDeniedException(AccessDeniedException ex) {
+        String traceId = generateTraceId();
+        log.error("Access denied [TraceId: {}]: {}", traceId, ex.getMessage());
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .traceId(traceId)
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.FORBIDDEN.value())
+                .error("Forbidden")
+                .message("You are not allowed to perform this operation")
+                .suggestion("Please contact an administrator")
+                .build();
+
+        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(ApiResponse.error("Access denied", errorResponse));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponse<ErrorResponse>> handleGenericException(Exception ex) {
         String traceId = generateTraceId();
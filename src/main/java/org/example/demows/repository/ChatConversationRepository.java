@@ -0,0 +1,46 @@
+package org.example.demows.repository;
+
+import org.example.demows.entity.ChatConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ChatConversationRepository extends JpaRepository<ChatConversation, Long> {
+
+    // Get a user's inbox, most recent conversation first
+    List<ChatConversation> findByOwnerUsernameOrderByLastMessageAtDesc(String ownerUsername);
+
+    // Subtract messages the user has just read; relative, so messages arriving meanwhile stay counted
+    @Modifying
+    @Query(value = "UPDATE chat_conversations SET unread_count = GREATEST(unread_count - :readCount, 0) " +
+           "WHERE owner_username = :ownerUsername AND other_username = :otherUsername",
+           nativeQuery = true)
+    int decrementUnread(@Param("ownerUsername") String ownerUsername,
+                        @Param("otherUsername") String otherUsername,
+                        @Param("readCount") long readCount);
+
+    // Rebuild every summary from chat_messages (same statement as the V4 migration backfill)
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO chat_conversations (owner_username, other_username, conversation_id, last_message_id, " +
+           "last_sender_username, last_message_preview, last_message_at, unread_count) " +
+           "SELECT DISTINCT ON (owner_username, other_username) owner_username, other_username, conversation_id, id, " +
+           "sender_username, LEFT(message, 100), timestamp, SUM(unread) OVER (PARTITION BY owner_username, other_username) " +
+           "FROM (" +
+           "  SELECT sender_username AS owner_username, receiver_username AS other_username, conversation_id, id, " +
+           "  sender_username, message, timestamp, 0 AS unread FROM chat_messages WHERE is_deleted = false " +
+           "  UNION ALL " +
+           "  SELECT receiver_username, sender_username, conversation_id, id, " +
+           "  sender_username, message, timestamp, CASE WHEN is_read THEN 0 ELSE 1 END FROM chat_messages WHERE is_deleted = false" +
+           ") sides " +
+           "ORDER BY owner_username, other_username, id DESC " +
+           "ON CONFLICT (owner_username, other_username) DO NOTHING",
+           nativeQuery = true)
+    int rebuildFromMessages();
+}
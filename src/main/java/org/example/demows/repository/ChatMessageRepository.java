@@ -1,62 +1,70 @@
 package org.example.demows.repository;
 
 import org.example.demows.entity.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
     
-    // Get conversation between two users (both directions)
+    // Conversation queries range-scan idx_chat_messages_conversation_id (conversation_id, id); the participant
+    // check only filters the rows of that range, guarding against conversation id hash collisions.
+    // chat_messages is range-partitioned by month on timestamp: the timestamp bound lets the planner skip
+    // partitions, so recent pages only touch the newest ones.
+
+    // Get a page of a conversation older than the cursor (keyset by id) among messages sent since a time, newest first
     @Query("SELECT cm FROM ChatMessage cm WHERE " +
-           "((cm.senderUsername = :user1 AND cm.receiverUsername = :user2) OR " +
-           "(cm.senderUsername = :user2 AND cm.receiverUsername = :user1)) AND " +
+           "cm.conversationId = :conversationId AND " +
+           "cm.id < :beforeId AND " +
+           "cm.timestamp >= :since AND " +
+           "cm.senderUsername IN (:user1, :user2) AND cm.receiverUsername IN (:user1, :user2) AND " +
            "cm.isDeleted = false " +
-           "ORDER BY cm.timestamp ASC")
-    List<ChatMessage> findConversationBetweenUsers(@Param("user1") String user1, @Param("user2") String user2);
+           "ORDER BY cm.id DESC")
+    List<ChatMessage> findRecentConversationPage(@Param("conversationId") Long conversationId,
+                                                 @Param("user1") String user1, @Param("user2") String user2,
+                                                 @Param("beforeId") Long beforeId, @Param("since") LocalDateTime since,
+                                                 Pageable pageable);
 
-    // Get unread messages for a user
+    // Same, among messages sent before a time (older partitions)
     @Query("SELECT cm FROM ChatMessage cm WHERE " +
-           "cm.receiverUsername = :username AND " +
-           "cm.isRead = false AND " +
+           "cm.conversationId = :conversationId AND " +
+           "cm.id < :beforeId AND " +
+           "cm.timestamp < :until AND " +
+           "cm.senderUsername IN (:user1, :user2) AND cm.receiverUsername IN (:user1, :user2) AND " +
            "cm.isDeleted = false " +
-           "ORDER BY cm.timestamp DESC")
-    List<ChatMessage> findUnreadMessagesByReceiverUsername(@Param("username") String username);
-
-    // Get all conversations for a user (get unique chat partners)
-    @Query("SELECT DISTINCT " +
-           "CASE " +
-           "  WHEN cm.senderUsername = :username THEN cm.receiverUsername " +
-           "  ELSE cm.senderUsername " +
-           "END as chatPartner " +
-           "FROM ChatMessage cm " +
-           "WHERE (cm.senderUsername = :username OR cm.receiverUsername = :username) " +
-           "AND cm.isDeleted = false")
-    List<String> findChatPartnersForUser(@Param("username") String username);
-
-    // Get last message from each conversation
-    @Query("SELECT cm FROM ChatMessage cm WHERE cm.id IN (" +
-           "SELECT MAX(cm2.id) FROM ChatMessage cm2 " +
-           "WHERE (cm2.senderUsername = :username OR cm2.receiverUsername = :username) " +
-           "AND cm2.isDeleted = false " +
-           "GROUP BY " +
-           "CASE " +
-           "  WHEN cm2.senderUsername = :username THEN cm2.receiverUsername " +
-           "  ELSE cm2.senderUsername " +
-           "END) " +
-           "ORDER BY cm.timestamp DESC")
-    List<ChatMessage> findLastMessagesForUser(@Param("username") String username);
-
-    // Count unread messages for a specific conversation
-    @Query("SELECT COUNT(cm) FROM ChatMessage cm WHERE " +
-           "cm.receiverUsername = :receiverUsername AND " +
-           "cm.senderUsername = :senderUsername AND " +
-           "cm.isRead = false AND " +
-           "cm.isDeleted = false")
-    long countUnreadMessagesInConversation(@Param("senderUsername") String senderUsername, 
-                                          @Param("receiverUsername") String receiverUsername);
+           "ORDER BY cm.id DESC")
+    List<ChatMessage> findOlderConversationPage(@Param("conversationId") Long conversationId,
+                                                @Param("user1") String user1, @Param("user2") String user2,
+                                                @Param("beforeId") Long beforeId, @Param("until") LocalDateTime until,
+                                                Pageable pageable);
+
+    // Mark everything one user received in a conversation as read in a single statement,
+    // returning how many messages changed and the highest of their ids
+    @Query(value = "WITH marked AS (" +
+           "  UPDATE chat_messages SET is_read = true, read_at = :readAt " +
+           "  WHERE conversation_id = :conversationId AND " +
+           "  receiver_username = :receiverUsername AND " +
+           "  sender_username = :senderUsername AND " +
+           "  is_read = false AND " +
+           "  is_deleted = false " +
+           "  RETURNING id" +
+           ") SELECT COUNT(*) AS \"readCount\", MAX(id) AS \"upToId\" FROM marked",
+           nativeQuery = true)
+    ReadUpTo markConversationRead(@Param("conversationId") Long conversationId,
+                                  @Param("senderUsername") String senderUsername,
+                                  @Param("receiverUsername") String receiverUsername,
+                                  @Param("readAt") LocalDateTime readAt);
+
+    interface ReadUpTo {
+        long getReadCount();
+
+        // null when nothing was unread
+        Long getUpToId();
+    }
 }
@@ -1,11 +1,13 @@
 package org.example.demows.repository;
 
 import org.example.demows.entity.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -16,10 +18,38 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
             "ORDER BY n.createdAt DESC")
     List<Notification> findUnreadNotificationsForUser(@Param("userId") Long userId);
 
-    // Find all notifications for user
+    // Newest page of the user's notifications (keyset by created_at, id)
     @Query("SELECT n FROM Notification n WHERE n.user.id = :userId " +
-            "AND n.isActive = true ORDER BY n.createdAt DESC")
-    List<Notification> findAllNotificationsForUser(@Param("userId") Long userId);
+            "AND n.isActive = true ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findNotificationPageForUser(@Param("userId") Long userId, Pageable pageable);
+
+    // Page of the user's notifications older than the cursor (created_at, id), newest first
+    @Query("SELECT n FROM Notification n WHERE n.user.id = :userId AND n.isActive = true " +
+            "AND (n.createdAt < :createdAt OR (n.createdAt = :createdAt AND n.id < :id)) " +
+            "ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findNotificationPageForUser(@Param("userId") Long userId,
+                                                   @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                                   Pageable pageable);
+
+    // The user's notifications changed after a sequence number, in sequence order
+    @Query("SELECT n FROM Notification n WHERE n.user.id = :userId " +
+            "AND n.isActive = true AND n.seq > :sinceSeq ORDER BY n.seq")
+    List<Notification> findChangedSince(@Param("userId") Long userId, @Param("sinceSeq") Long sinceSeq, Pageable pageable);
+
+    // The user's unread notifications with a collapse key, newest first
+    @Query("SELECT n FROM Notification n WHERE n.user.id = :userId AND n.collapseKey = :collapseKey " +
+            "AND n.isRead = false AND n.isActive = true ORDER BY n.id DESC")
+    List<Notification> findUnreadByCollapseKey(@Param("userId") Long userId, @Param("collapseKey") String collapseKey);
+
+    // Users with notifications waiting for a digest
+    @Query(value = "SELECT DISTINCT user_id FROM notifications WHERE digest_pending = true ORDER BY user_id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findDigestPendingUserIds(@Param("limit") int limit);
+
+    // The users' notifications waiting for a digest (not numbered yet), grouped by user in creation order
+    @Query("SELECT n FROM Notification n WHERE n.user.id IN :userIds AND n.digestPending = true " +
+            "ORDER BY n.user.id, n.createdAt, n.id")
+    List<Notification> findDigestPending(@Param("userIds") List<Long> userIds);
 
     // Count unread notifications
     @Query("SELECT COUNT(n) FROM Notification n WHERE n.user.id = :userId " +
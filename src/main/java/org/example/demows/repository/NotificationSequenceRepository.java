@@ -0,0 +1,9 @@
+package org.example.demows.repository;
+
+import org.example.demows.entity.NotificationSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface NotificationSequenceRepository extends JpaRepository<NotificationSequence, Long> {
+}
@@ -1,16 +1,21 @@
 package org.example.demows.service;
 
+import org.example.demows.dto.ChatConversationDto;
+import org.example.demows.dto.ChatConversationPageDto;
 import org.example.demows.dto.ChatMessageDto;
+import org.example.demows.dto.ChatReadReceiptDto;
 import org.example.demows.dto.ChatRequestDto;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ChatService {
-    List<ChatMessageDto> getUserChats(String username);
-        List<ChatMessageDto> getConversation(String username, String otherUsername);
+    List<ChatConversationDto> getUserChats(String username);
+    ChatConversationPageDto getConversation(String username, String otherUsername, Long beforeId, Integer limit);
     ChatMessageDto sendMessage(String senderUsername, ChatRequestDto request);
     ChatMessageDto markMessageAsRead(Long messageId, String username);
-    List<ChatMessageDto> markConversationAsRead(String username, String otherUsername);
+    ChatReadReceiptDto markConversationAsRead(String username, String otherUsername);
     List<String> getChatPartners(String username);
     long getUnreadMessageCount(String username, String otherUsername);
+    Map<String, Long> getUnreadMessageCounts(String username);
 }
@@ -1,7 +1,9 @@
 package org.example.demows.service;
 
 
+import org.example.demows.dto.ExchangeRateCandleDto;
 import org.example.demows.dto.ExchangeRateDto;
+import org.example.demows.dto.ExchangeRateTickDto;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -9,6 +11,8 @@ import java.util.List;
 public interface ExchangeRateService {
     List<ExchangeRateDto> getAllExchangeRates();
     ExchangeRateDto getExchangeRate(String fromCurrency, String toCurrency);
+    ExchangeRateTickDto getExchangeRateSnapshot(String pairs);
+    List<ExchangeRateCandleDto> getCandles(String fromCurrency, String toCurrency, String interval, int limit);
 
     ExchangeRateDto updateExchangeRate(String fromCurrency, String toCurrency, BigDecimal newRate);
 
@@ -0,0 +1,239 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.ChatMessageDto;
+import org.example.demows.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Recent messages of the most recently used conversations, so opening a conversation does not need a query.
+ * <p>
+ * Each conversation keeps a fixed-size ring buffer of its newest {@link ChatMessageDto}s in id order; the
+ * conversations themselves are evicted LRU beyond {@code chat.cache.max-conversations}. A buffer only answers
+ * pages once it was seeded from the database (merged with whatever was sent meanwhile): from then on it is a
+ * gap-free tail of the conversation, kept current by every send and read receipt, both local and from the
+ * {@code chat-messages} topic of other instances. Seeds expire after {@code chat.cache.ttl-seconds} to bound
+ * the damage of a lost update.
+ */
+@Component
+public class ChatConversationCache {
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final Map<Long, RecentMessages> conversations; // guarded by itself
+
+    public ChatConversationCache(@Value("${chat.cache.messages-per-conversation:100}") int capacity,
+                                 @Value("${chat.cache.max-conversations:10000}") int maxConversations,
+                                 @Value("${chat.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.conversations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RecentMessages> eldest) {
+                return size() > maxConversations;
+            }
+        };
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns up to {@code count} messages older than {@code beforeId} (or the newest ones), newest first,
+     * or {@code null} if the cache cannot tell them apart from a full database page.
+     */
+    public List<ChatMessageDto> page(String username, String otherUsername, Long beforeId, int count) {
+        RecentMessages recent = find(username, otherUsername);
+        return recent != null ? recent.page(beforeId, count, System.currentTimeMillis() - ttlMillis) : null;
+    }
+
+    /**
+     * Seeds a conversation with its newest messages as loaded from the database (newest first);
+     * {@code complete} means there are no older ones.
+     */
+    public void seed(String username, String otherUsername, List<ChatMessageDto> newestFirst, boolean complete) {
+        RecentMessages recent = getOrCreate(username, otherUsername);
+        if (recent != null) {
+            recent.seed(newestFirst, complete, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Adds a new message, or replaces the cached copy of an updated one.
+     */
+    public void put(ChatMessageDto message) {
+        RecentMessages recent = getOrCreate(message.getSenderUsername(), message.getReceiverUsername());
+        if (recent != null) {
+            recent.put(message);
+        }
+    }
+
+    /**
+     * Applies a read receipt: everything {@code senderUsername} sent {@code readerUsername} up to {@code upToId} is read.
+     */
+    public void markRead(String senderUsername, String readerUsername, long upToId, String readAt) {
+        RecentMessages recent = find(senderUsername, readerUsername);
+        if (recent != null) {
+            recent.markRead(senderUsername, upToId, readAt);
+        }
+    }
+
+    private RecentMessages find(String username, String otherUsername) {
+        RecentMessages recent;
+        synchronized (conversations) {
+            recent = conversations.get(ChatMessage.conversationIdOf(username, otherUsername));
+        }
+        // Conversation ids are hashes: never serve another pair's messages
+        return recent != null && recent.isBetween(username, otherUsername) ? recent : null;
+    }
+
+    private RecentMessages getOrCreate(String username, String otherUsername) {
+        RecentMessages recent;
+        synchronized (conversations) {
+            recent = conversations.computeIfAbsent(ChatMessage.conversationIdOf(username, otherUsername),
+                    id -> new RecentMessages(username, otherUsername, capacity));
+        }
+        return recent.isBetween(username, otherUsername) ? recent : null;
+    }
+
+    private static ChatMessageDto withRead(ChatMessageDto message, String readAt) {
+        return ChatMessageDto.builder()
+                .id(message.getId())
+                .senderUsername(message.getSenderUsername())
+                .receiverUsername(message.getReceiverUsername())
+                .message(message.getMessage())
+                .messageType(message.getMessageType())
+                .timestamp(message.getTimestamp())
+                .isRead(true)
+                .readAt(readAt)
+                .isDeleted(message.isDeleted())
+                .clientMessageId(message.getClientMessageId())
+                .build();
+    }
+
+    /**
+     * Ring buffer of the newest messages of one conversation, ascending by id from {@code head}.
+     */
+    private static final class RecentMessages {
+
+        private final String user1;
+        private final String user2;
+        private final ChatMessageDto[] ring;
+        private int head;
+        private int count;
+        private long seededAt = Long.MIN_VALUE; // never seeded: the buffer may have gaps
+        private boolean complete; // the buffer holds the whole conversation
+
+        RecentMessages(String username, String otherUsername, int capacity) {
+            this.user1 = username;
+            this.user2 = otherUsername;
+            this.ring = new ChatMessageDto[capacity];
+        }
+
+        boolean isBetween(String username, String otherUsername) {
+            return user1.equals(username) && user2.equals(otherUsername)
+                    || user1.equals(otherUsername) && user2.equals(username);
+        }
+
+        synchronized List<ChatMessageDto> page(Long beforeId, int pageCount, long seededAfter) {
+            if (seededAt < seededAfter) {
+                return null;
+            }
+            List<ChatMessageDto> result = new ArrayList<>(Math.min(pageCount, count));
+            for (int i = count - 1; i >= 0 && result.size() < pageCount; i--) {
+                ChatMessageDto message = get(i);
+                if (beforeId == null || message.getId() < beforeId) {
+                    result.add(message);
+                }
+            }
+            // Fewer than asked for is only the truth if nothing older exists
+            return result.size() == pageCount || complete ? result : null;
+        }
+
+        synchronized void seed(List<ChatMessageDto> newestFirst, boolean loadedAll, long now) {
+            TreeMap<Long, ChatMessageDto> merged = new TreeMap<>();
+            newestFirst.forEach(message -> merged.put(message.getId(), message));
+            long oldestLoaded = newestFirst.isEmpty() ? Long.MIN_VALUE : newestFirst.get(newestFirst.size() - 1).getId();
+            // Keep what was sent or read meanwhile (e.g. messages still queued for the database)
+            for (int i = 0; i < count; i++) {
+                ChatMessageDto cached = get(i);
+                if (loadedAll || cached.getId() >= oldestLoaded) {
+                    merged.merge(cached.getId(), cached, (loaded, mine) -> mine.isRead() && !loaded.isRead() ? mine : loaded);
+                }
+            }
+
+            head = 0;
+            count = 0;
+            complete = loadedAll;
+            merged.values().forEach(this::append);
+            seededAt = now;
+        }
+
+        synchronized void put(ChatMessageDto message) {
+            long id = message.getId();
+            if (count == 0 || id > get(count - 1).getId()) {
+                append(message);
+                return;
+            }
+            int position = 0;
+            while (position < count && get(position).getId() < id) {
+                position++;
+            }
+            if (position < count && get(position).getId() == id) {
+                ring[index(position)] = message;
+                return;
+            }
+            if (position == 0 && (count == ring.length || !complete)) {
+                return; // older than everything kept, and possibly not adjacent to it
+            }
+            if (count == ring.length) {
+                dropOldest();
+                position--;
+            }
+            for (int i = count; i > position; i--) {
+                ring[index(i)] = get(i - 1);
+            }
+            ring[index(position)] = message;
+            count++;
+        }
+
+        synchronized void markRead(String senderUsername, long upToId, String readAt) {
+            for (int i = 0; i < count; i++) {
+                ChatMessageDto message = get(i);
+                if (message.getId() <= upToId && !message.isRead() && message.getSenderUsername().equals(senderUsername)) {
+                    ring[index(i)] = withRead(message, readAt);
+                }
+            }
+        }
+
+        private void append(ChatMessageDto message) {
+            if (count == ring.length) {
+                dropOldest();
+            }
+            ring[index(count)] = message;
+            count++;
+        }
+
+        private void dropOldest() {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            count--;
+            complete = false;
+        }
+
+        private ChatMessageDto get(int i) {
+            return ring[index(i)];
+        }
+
+        private int index(int i) {
+            return (head + i) % ring.length;
+        }
+    }
+}
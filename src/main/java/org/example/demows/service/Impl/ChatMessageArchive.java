@@ -0,0 +1,209 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.entity.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintenance and reads of the monthly {@code chat_messages} partitions (see {@code V5__Partition_chat_messages.sql}).
+ * <p>
+ * A daily job creates the partitions of the coming months and archives partitions older than
+ * {@code chat.archive.after-months}: each conversation's messages of that month become one JSONB row of
+ * {@code chat_messages_archive} (large values, so TOAST compresses them) and the partition is dropped, which keeps
+ * the live indexes small. Archived messages count as read. Conversation pages continue into the archive
+ * transparently through {@link #findPage}.
+ * <p>
+ * Without a partitioned {@code chat_messages} (the dev profile lets Hibernate create the schema) all of this is off.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatMessageArchive {
+
+    private static final String IS_PARTITIONED_SQL = "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('chat_messages'))";
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'chat_messages'::regclass";
+    private static final Pattern PARTITION_NAME = Pattern.compile("chat_messages_p(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    // Reads the message counts only, not the (compressed) messages
+    private static final String SELECT_ARCHIVED_MONTHS_SQL = "SELECT month, message_count FROM chat_messages_archive " +
+            "WHERE conversation_id = ? AND first_id < ? ORDER BY month DESC";
+    private static final String SELECT_ARCHIVED_SQL = "SELECT m.id, m.sender_username, m.receiver_username, m.message, m.message_type, " +
+            "m.timestamp, m.is_read, m.read_at, m.is_deleted " +
+            "FROM chat_messages_archive a CROSS JOIN LATERAL jsonb_to_recordset(a.messages) AS m(id BIGINT, sender_username TEXT, " +
+            "receiver_username TEXT, message TEXT, message_type TEXT, timestamp TIMESTAMP, is_read BOOLEAN, read_at TIMESTAMP, is_deleted BOOLEAN) " +
+            "WHERE a.conversation_id = ? AND a.month = ANY(?) AND m.id < ? " +
+            "AND m.sender_username IN (?, ?) AND m.receiver_username IN (?, ?) AND NOT m.is_deleted " +
+            "ORDER BY m.id DESC LIMIT ?";
+    // %s: partition name, only ever built from a date
+    private static final String RELEASE_UNREAD_SQL = "UPDATE chat_conversations c SET unread_count = GREATEST(c.unread_count - u.unread, 0) " +
+            "FROM (SELECT receiver_username, sender_username, COUNT(*) AS unread FROM %s " +
+            "WHERE is_read = false AND is_deleted = false GROUP BY receiver_username, sender_username) u " +
+            "WHERE c.owner_username = u.receiver_username AND c.other_username = u.sender_username";
+    private static final String ARCHIVE_PARTITION_SQL = "INSERT INTO chat_messages_archive " +
+            "(conversation_id, month, first_id, last_id, message_count, messages) " +
+            "SELECT conversation_id, ?, MIN(id), MAX(id), COUNT(*), jsonb_agg(jsonb_build_object(" +
+            "'id', id, 'sender_username', sender_username, 'receiver_username', receiver_username, 'message', message, " +
+            "'message_type', message_type, 'timestamp', timestamp, 'is_read', true, 'read_at', COALESCE(read_at, ?), " +
+            "'is_deleted', is_deleted) ORDER BY id) " +
+            "FROM %s GROUP BY conversation_id " +
+            "ON CONFLICT (conversation_id, month) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${chat.archive.after-months:6}")
+    private int archiveAfterMonths;
+
+    @Value("${chat.archive.months-ahead:2}")
+    private int monthsAhead;
+
+    private volatile boolean partitioned;
+
+    /**
+     * Returns up to {@code count} archived messages of a conversation older than {@code beforeId}, newest first.
+     * Archived months are unpacked newest first, only as many as the page needs.
+     */
+    public List<ChatMessage> findPage(long conversationId, String username, String otherUsername, long beforeId, int count) {
+        if (!partitioned) {
+            return List.of();
+        }
+        List<ArchivedMonth> months = jdbcTemplate.query(SELECT_ARCHIVED_MONTHS_SQL,
+                (rs, rowNum) -> new ArchivedMonth(rs.getDate("month"), rs.getInt("message_count")), conversationId, beforeId);
+
+        List<ChatMessage> page = new ArrayList<>();
+        int next = 0;
+        while (page.size() < count && next < months.size()) {
+            // Enough months for the rest of the page, unless some of their messages are filtered out
+            List<Date> unpacked = new ArrayList<>();
+            int available = 0;
+            while (next < months.size() && available < count - page.size()) {
+                unpacked.add(months.get(next).month());
+                available += months.get(next).messageCount();
+                next++;
+            }
+            int remaining = count - page.size();
+            page.addAll(jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(SELECT_ARCHIVED_SQL);
+                ps.setLong(1, conversationId);
+                ps.setArray(2, connection.createArrayOf("date", unpacked.toArray()));
+                ps.setLong(3, beforeId);
+                ps.setString(4, username);
+                ps.setString(5, otherUsername);
+                ps.setString(6, username);
+                ps.setString(7, otherUsername);
+                ps.setInt(8, remaining);
+                return ps;
+            }, (rs, rowNum) -> toMessage(rs, conversationId)));
+        }
+        return page;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            partitioned = Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class));
+        } catch (DataAccessException e) {
+            log.warn("Could not tell whether chat_messages is partitioned, archive disabled", e);
+        }
+        log.info("chat_messages partitioning {}", partitioned ? "enabled" : "not available, archive disabled");
+        maintain();
+    }
+
+    /**
+     * Creates upcoming monthly partitions and archives the cold ones.
+     */
+    @Scheduled(cron = "${chat.archive.cron:0 30 3 * * *}")
+    public void maintain() {
+        if (!partitioned) {
+            return;
+        }
+        LocalDate currentMonth = LocalDate.now().withDayOfMonth(1);
+        for (int ahead = 0; ahead <= monthsAhead; ahead++) {
+            createPartition(currentMonth.plusMonths(ahead));
+        }
+
+        LocalDate archiveBefore = currentMonth.minusMonths(archiveAfterMonths);
+        for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches()) {
+                LocalDate month = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1);
+                if (month.isBefore(archiveBefore)) {
+                    archive(month);
+                }
+            }
+        }
+    }
+
+    private void createPartition(LocalDate month) {
+        String sql = String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF chat_messages FOR VALUES FROM ('%s') TO ('%s')",
+                partitionName(month), month, month.plusMonths(1));
+        try {
+            jdbcTemplate.execute(sql);
+        } catch (DataAccessException e) {
+            // e.g. rows of that month already landed in the default partition
+            log.error("Could not create chat_messages partition for {}", month, e);
+        }
+    }
+
+    private void archive(LocalDate month) {
+        String partition = partitionName(month);
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.update(String.format(RELEASE_UNREAD_SQL, partition));
+                int conversations = jdbcTemplate.update(String.format(ARCHIVE_PARTITION_SQL, partition),
+                        Date.valueOf(month), new Timestamp(System.currentTimeMillis()));
+                jdbcTemplate.execute("ALTER TABLE chat_messages DETACH PARTITION " + partition);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                log.info("Archived chat_messages partition {} ({} conversations)", partition, conversations);
+            });
+        } catch (DataAccessException e) {
+            log.error("Error archiving chat_messages partition {}, retrying with the next run", partition, e);
+        }
+    }
+
+    private static String partitionName(LocalDate month) {
+        return "chat_messages_p" + month.format(PARTITION_SUFFIX);
+    }
+
+    private static ChatMessage toMessage(ResultSet rs, long conversationId) throws SQLException {
+        Timestamp readAt = rs.getTimestamp("read_at");
+        return ChatMessage.builder()
+                .id(rs.getLong("id"))
+                .senderUsername(rs.getString("sender_username"))
+                .receiverUsername(rs.getString("receiver_username"))
+                .conversationId(conversationId)
+                .message(rs.getString("message"))
+                .messageType(ChatMessage.MessageType.valueOf(rs.getString("message_type")))
+                .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                .isRead(rs.getBoolean("is_read"))
+                .readAt(readAt != null ? readAt.toLocalDateTime() : null)
+                .isDeleted(rs.getBoolean("is_deleted"))
+                .build();
+    }
+
+    private record ArchivedMonth(Date month, int messageCount) {
+    }
+}
@@ -0,0 +1,361 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.entity.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind stage for chat messages: the sender gets its message (with its final id) back and delivered
+ * right away, while a single background thread drains a bounded queue into JDBC batch inserts.
+ * <p>
+ * Ids are taken from the {@code chat_messages} id sequence one at a time, so messages have their id before they
+ * are written and ids follow send order across instances (keyset pages, read-up-to receipts, inbox previews and
+ * archive month selection all order by id). Each batch inserts its messages and upserts the inbox entries
+ * ({@code chat_conversations}) of the messages it actually inserted, in one transaction, so a batch written
+ * twice does not count its messages twice. When the queue is full, or write-behind is disabled, the caller
+ * writes its message itself.
+ * <p>
+ * A batch failing because the database is unavailable is retried as a whole. A batch the database rejects for
+ * its data is split until the rejected messages stand alone; those are written to the {@code .dead-letter} log
+ * instead of blocking the queue, and their client message ids are released. Read-state changes call
+ * {@link #flush()} first, so they see every message queued before them.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatMessageWriter implements InitializingBean, DisposableBean {
+
+    private static final String NEXT_ID_SQL = "SELECT nextval(pg_get_serial_sequence('chat_messages', 'id'))";
+    // ON CONFLICT: a batch retried after an ambiguous commit must not fail forever on its own rows
+    // (no conflict target: the key is (id, timestamp) on the partitioned table, (id) on a Hibernate-created one).
+    // RETURNING reports only the rows actually inserted, so a retry does not count them in the inbox again.
+    private static final String INSERT_MESSAGES_SQL = "INSERT INTO chat_messages (id, sender_username, receiver_username, conversation_id, " +
+            "message, message_type, timestamp, is_read, read_at, is_deleted) " +
+            "SELECT * FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::bigint[], ?::text[], ?::varchar[], " +
+            "?::timestamp[], ?::boolean[], ?::timestamp[], ?::boolean[]) " +
+            "ON CONFLICT DO NOTHING RETURNING id";
+    // The last message only moves forward (by id), the unread count is incremented atomically
+    private static final String UPSERT_CONVERSATION_SQL = "INSERT INTO chat_conversations (owner_username, other_username, conversation_id, " +
+            "last_message_id, last_sender_username, last_message_preview, last_message_at, unread_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (owner_username, other_username) DO UPDATE SET " +
+            "last_message_id = GREATEST(chat_conversations.last_message_id, EXCLUDED.last_message_id), " +
+            "last_sender_username = CASE WHEN EXCLUDED.last_message_id > chat_conversations.last_message_id " +
+            "  THEN EXCLUDED.last_sender_username ELSE chat_conversations.last_sender_username END, " +
+            "last_message_preview = CASE WHEN EXCLUDED.last_message_id > chat_conversations.last_message_id " +
+            "  THEN EXCLUDED.last_message_preview ELSE chat_conversations.last_message_preview END, " +
+            "last_message_at = CASE WHEN EXCLUDED.last_message_id > chat_conversations.last_message_id " +
+            "  THEN EXCLUDED.last_message_at ELSE chat_conversations.last_message_at END, " +
+            "unread_count = chat_conversations.unread_count + EXCLUDED.unread_count";
+
+    private static final int PREVIEW_LENGTH = 100;
+    private static final long RETRY_DELAY_MS = 1_000;
+    private static final long FLUSH_TIMEOUT_MS = 10_000;
+    private static final Logger DEAD_LETTERS = LoggerFactory.getLogger(ChatMessageWriter.class.getName() + ".dead-letter");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ChatSendDeduplicator chatSendDeduplicator;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("chat-message-writer-"));
+
+    @Value("${chat.write-behind.enabled:true}")
+    private boolean writeBehind;
+
+    @Value("${chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.write-behind.batch-size:500}")
+    private int batchSize;
+
+    private BlockingQueue<ChatMessage> queue;
+    private TransactionTemplate transactionTemplate;
+    private volatile boolean running = true;
+
+    // Messages queued and messages taken off the queue and written (or dropped) so far, for flush()
+    private final Object pendingLock = new Object();
+    private long queued; // guarded by pendingLock
+    private long written; // guarded by pendingLock
+
+    @Override
+    public void afterPropertiesSet() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (writeBehind) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Returns the next chat message id. Not reserved in blocks: an instance would hand out ids from its block
+     * after other instances had moved past it, and a later message would sort before earlier ones.
+     */
+    public long nextId() {
+        return jdbcTemplate.queryForObject(NEXT_ID_SQL, Long.class);
+    }
+
+    /**
+     * Queues a message (which must already have its id) for the next batch, or writes it
+     * in the caller's transaction when write-behind is off or the queue is full.
+     */
+    public void write(ChatMessage message) {
+        if (writeBehind && running && enqueue(message)) {
+            return;
+        }
+        if (writeBehind) {
+            log.warn("Chat write-behind queue is full, writing message {} synchronously", message.getId());
+        }
+        writeBatch(List.of(message));
+    }
+
+    /**
+     * Waits until every message queued before this call is written (or dropped), so that a following change of
+     * read state applies to them too.
+     */
+    public void flush() {
+        if (!writeBehind) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        synchronized (pendingLock) {
+            long target = queued;
+            while (written < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Chat messages are still being written, retry later");
+                }
+                try {
+                    pendingLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for queued chat messages", e);
+                }
+            }
+        }
+    }
+
+    private boolean enqueue(ChatMessage message) {
+        synchronized (pendingLock) {
+            if (!queue.offer(message)) {
+                return false;
+            }
+            queued++;
+            return true;
+        }
+    }
+
+    private void completed(int count) {
+        synchronized (pendingLock) {
+            written += count;
+            pendingLock.notifyAll();
+        }
+    }
+
+    private void drain() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeWithRetry(batch);
+                completed(batch.size());
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void writeWithRetry(List<ChatMessage> batch) throws InterruptedException {
+        while (true) {
+            try {
+                writeBatch(batch);
+                log.debug("Wrote {} chat messages in one batch", batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (!DataAccessFailures.isTransient(e)) {
+                    writeApart(batch, e);
+                    return;
+                }
+                if (!running) {
+                    log.error("Error writing {} chat messages during shutdown, dropping them", batch.size(), e);
+                    return;
+                }
+                log.error("Error writing {} chat messages, retrying in {} ms", batch.size(), RETRY_DELAY_MS, e);
+                Thread.sleep(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    // Halves of a rejected batch are written on their own; a message rejected alone is dead-lettered
+    private void writeApart(List<ChatMessage> batch, RuntimeException cause) throws InterruptedException {
+        if (batch.size() == 1) {
+            ChatMessage message = batch.get(0);
+            DEAD_LETTERS.error("Chat message {} from {} to {} at {} [clientMessageId: {}] rejected by the database, " +
+                            "not written: {}", message.getId(), message.getSenderUsername(), message.getReceiverUsername(),
+                    message.getTimestamp(), message.getClientMessageId(), message.getMessage(), cause);
+            // Its client message id was claimed when it was sent; a retry must not be answered with this message
+            if (message.getClientMessageId() != null) {
+                chatSendDeduplicator.release(message.getSenderUsername(), message.getClientMessageId(), message.getId());
+            }
+            return;
+        }
+        log.warn("Chat message batch of {} rejected ({}), writing it in halves", batch.size(), cause.getMessage());
+        int half = batch.size() / 2;
+        writeWithRetry(batch.subList(0, half));
+        writeWithRetry(batch.subList(half, batch.size()));
+    }
+
+    private void writeBatch(List<ChatMessage> messages) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> inserted = new HashSet<>(insertMessages(messages));
+            if (inserted.isEmpty()) {
+                return;
+            }
+            List<ConversationUpdate> updates = conversationUpdates(messages.stream()
+                    .filter(message -> inserted.contains(message.getId()))
+                    .toList());
+            jdbcTemplate.batchUpdate(UPSERT_CONVERSATION_SQL, updates, updates.size(), (ps, update) -> {
+                ps.setString(1, update.ownerUsername);
+                ps.setString(2, update.otherUsername);
+                ps.setLong(3, update.last.getConversationId());
+                ps.setLong(4, update.last.getId());
+                ps.setString(5, update.last.getSenderUsername());
+                ps.setString(6, preview(update.last.getMessage()));
+                ps.setTimestamp(7, Timestamp.valueOf(update.last.getTimestamp()));
+                ps.setLong(8, update.unreadIncrement);
+            });
+        });
+    }
+
+    /**
+     * Inserts the messages in one statement and returns the ids of those not already present.
+     */
+    private List<Long> insertMessages(List<ChatMessage> messages) {
+        int size = messages.size();
+        Long[] ids = new Long[size];
+        String[] senders = new String[size];
+        String[] receivers = new String[size];
+        Long[] conversationIds = new Long[size];
+        String[] texts = new String[size];
+        String[] types = new String[size];
+        Timestamp[] timestamps = new Timestamp[size];
+        Boolean[] read = new Boolean[size];
+        Timestamp[] readAt = new Timestamp[size];
+        Boolean[] deleted = new Boolean[size];
+        for (int i = 0; i < size; i++) {
+            ChatMessage message = messages.get(i);
+            ids[i] = message.getId();
+            senders[i] = message.getSenderUsername();
+            receivers[i] = message.getReceiverUsername();
+            conversationIds[i] = message.getConversationId();
+            texts[i] = message.getMessage();
+            types[i] = message.getMessageType().name();
+            timestamps[i] = Timestamp.valueOf(message.getTimestamp());
+            read[i] = message.isRead();
+            readAt[i] = message.getReadAt() != null ? Timestamp.valueOf(message.getReadAt()) : null;
+            deleted[i] = message.isDeleted();
+        }
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_MESSAGES_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", ids));
+            ps.setArray(2, connection.createArrayOf("varchar", senders));
+            ps.setArray(3, connection.createArrayOf("varchar", receivers));
+            ps.setArray(4, connection.createArrayOf("bigint", conversationIds));
+            ps.setArray(5, connection.createArrayOf("text", texts));
+            ps.setArray(6, connection.createArrayOf("varchar", types));
+            ps.setArray(7, connection.createArrayOf("timestamp", timestamps));
+            ps.setArray(8, connection.createArrayOf("boolean", read));
+            ps.setArray(9, connection.createArrayOf("timestamp", readAt));
+            ps.setArray(10, connection.createArrayOf("boolean", deleted));
+            return ps;
+        }, (rs, rowNum) -> rs.getLong(1));
+    }
+
+    /**
+     * One inbox update per (owner, other) side touched by the batch, in key order: concurrent writers
+     * (the drain thread and synchronous callers) then lock the rows in the same order and cannot deadlock.
+     */
+    private static List<ConversationUpdate> conversationUpdates(List<ChatMessage> messages) {
+        Map<String, ConversationUpdate> updates = new TreeMap<>();
+        for (ChatMessage message : messages) {
+            String sender = message.getSenderUsername();
+            String receiver = message.getReceiverUsername();
+            updates.computeIfAbsent(sender + '\0' + receiver, key -> new ConversationUpdate(sender, receiver))
+                    .add(message, false);
+            updates.computeIfAbsent(receiver + '\0' + sender, key -> new ConversationUpdate(receiver, sender))
+                    .add(message, !message.isRead());
+        }
+        return new ArrayList<>(updates.values());
+    }
+
+    private static String preview(String message) {
+        if (message.length() <= PREVIEW_LENGTH) {
+            return message;
+        }
+        int end = Character.isHighSurrogate(message.charAt(PREVIEW_LENGTH - 1)) ? PREVIEW_LENGTH - 1 : PREVIEW_LENGTH;
+        return message.substring(0, end);
+    }
+
+    /**
+     * Flushes everything still queued before the datasource goes away.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Chat message writer did not drain in time, {} messages not written", queue.size());
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class ConversationUpdate {
+
+        private final String ownerUsername;
+        private final String otherUsername;
+        private ChatMessage last;
+        private long unreadIncrement;
+
+        ConversationUpdate(String ownerUsername, String otherUsername) {
+            this.ownerUsername = ownerUsername;
+            this.otherUsername = otherUsername;
+        }
+
+        void add(ChatMessage message, boolean unread) {
+            if (last == null || message.getId() > last.getId()) {
+                last = message;
+            }
+            if (unread) {
+                unreadIncrement++;
+            }
+        }
+    }
+}
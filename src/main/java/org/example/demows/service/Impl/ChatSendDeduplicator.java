@@ -0,0 +1,211 @@
+package org.example.demows.service.Impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ChatMessageDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Collapses retried chat sends: a send carrying a client message id the sender already used within
+ * {@code chat.dedupe.window-seconds} returns the original {@link ChatMessageDto} instead of sending again.
+ * <p>
+ * The window is a bounded map in insertion (= time) order, so expiry and the {@code chat.dedupe.max-entries}
+ * bound both drop its oldest entries. A retry arriving while the original is still being sent waits for it.
+ * Sends seen on the {@code chat-messages} topic are remembered too, so a retry that reconnected to another
+ * instance is collapsed as well. A send the window misses {@link #claim claims} its id in
+ * {@code chat_client_messages} before it is delivered; the unique key there answers a retry with the original
+ * message id. This class also purges that table.
+ */
+@Component
+@Slf4j
+public class ChatSendDeduplicator {
+
+    private static final long WAIT_FOR_ORIGINAL_SECONDS = 10;
+    private static final String CLAIM_SQL = "INSERT INTO chat_client_messages (sender_username, client_message_id, message_id, created_at) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (sender_username, client_message_id) DO NOTHING RETURNING message_id";
+    private static final String CLAIMED_SQL = "SELECT message_id FROM chat_client_messages WHERE sender_username = ? AND client_message_id = ?";
+    private static final String RELEASE_SQL = "DELETE FROM chat_client_messages " +
+            "WHERE sender_username = ? AND client_message_id = ? AND message_id = ?";
+    private static final String PURGE_SQL = "DELETE FROM chat_client_messages WHERE created_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long windowMillis;
+    private final long retentionMillis;
+    private final Map<String, Entry> sends; // guarded by itself
+
+    public ChatSendDeduplicator(JdbcTemplate jdbcTemplate,
+                                @Value("${chat.dedupe.window-seconds:300}") long windowSeconds,
+                                @Value("${chat.dedupe.max-entries:100000}") int maxEntries,
+                                @Value("${chat.dedupe.retention-hours:24}") long retentionHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.windowMillis = windowSeconds * 1000;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.sends = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Runs {@code send} unless {@code senderUsername} already sent {@code clientMessageId} within the window,
+     * in which case the original message is returned. Without a client message id every call sends.
+     */
+    public ChatMessageDto send(String senderUsername, String clientMessageId, Supplier<ChatMessageDto> send) {
+        if (clientMessageId == null || clientMessageId.isBlank()) {
+            return send.get();
+        }
+        String key = key(senderUsername, clientMessageId);
+        while (true) {
+            Entry mine = new Entry(System.currentTimeMillis());
+            Entry existing;
+            synchronized (sends) {
+                existing = sends.get(key);
+                if (existing == null || existing.isExpired(mine.createdAt - windowMillis)) {
+                    sends.remove(key); // re-inserted at the young end
+                    sends.put(key, mine);
+                    existing = null;
+                }
+            }
+            if (existing == null) {
+                return sendOnce(key, mine, send);
+            }
+            ChatMessageDto original = await(existing);
+            if (original != null) {
+                log.info("Collapsed retry of chat message {} from {} into message {}", clientMessageId, senderUsername, original.getId());
+                return original;
+            }
+            // The original send failed and was forgotten: this retry sends
+        }
+    }
+
+    /**
+     * Remembers a message sent elsewhere (another instance, read back from Kafka) for the rest of the window.
+     */
+    public void remember(ChatMessageDto message) {
+        if (message.getClientMessageId() == null) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis());
+        entry.result.complete(message);
+        synchronized (sends) {
+            sends.putIfAbsent(key(message.getSenderUsername(), message.getClientMessageId()), entry);
+        }
+    }
+
+    /**
+     * Claims {@code clientMessageId} of {@code senderUsername} for {@code messageId}, in the caller's transaction.
+     * Returns {@code null} if this call claimed it, otherwise the id of the message that did (a concurrent claim
+     * of the same id waits for the first to commit).
+     */
+    public Long claim(String senderUsername, String clientMessageId, long messageId, LocalDateTime createdAt) {
+        List<Long> claimed = jdbcTemplate.queryForList(CLAIM_SQL, Long.class, senderUsername, clientMessageId,
+                messageId, Timestamp.valueOf(createdAt));
+        if (!claimed.isEmpty()) {
+            return null;
+        }
+        return jdbcTemplate.queryForObject(CLAIMED_SQL, Long.class, senderUsername, clientMessageId);
+    }
+
+    /**
+     * Forgets that {@code clientMessageId} was sent as {@code messageId}, for a message that was never written:
+     * a retry then sends it again instead of waiting for a message that will not appear.
+     */
+    public void release(String senderUsername, String clientMessageId, long messageId) {
+        String key = key(senderUsername, clientMessageId);
+        synchronized (sends) {
+            Entry entry = sends.get(key);
+            if (entry != null && entry.result.isDone()) {
+                ChatMessageDto sent = entry.result.getNow(null);
+                if (sent != null && sent.getId() == messageId) {
+                    sends.remove(key);
+                }
+            }
+        }
+        try {
+            jdbcTemplate.update(RELEASE_SQL, senderUsername, clientMessageId, messageId);
+        } catch (DataAccessException e) {
+            log.warn("Could not release client message id {} of {} (message {})", clientMessageId, senderUsername, messageId, e);
+        }
+    }
+
+    /**
+     * Drops expired window entries and purges client ids older than {@code chat.dedupe.retention-hours}.
+     */
+    @Scheduled(fixedDelayString = "${chat.dedupe.purge-interval-ms:60000}")
+    public void purge() {
+        long now = System.currentTimeMillis();
+        synchronized (sends) {
+            Iterator<Entry> oldestFirst = sends.values().iterator();
+            while (oldestFirst.hasNext() && oldestFirst.next().isExpired(now - windowMillis)) {
+                oldestFirst.remove();
+            }
+        }
+        try {
+            int purged = jdbcTemplate.update(PURGE_SQL, new Timestamp(now - retentionMillis));
+            log.debug("Purged {} expired chat client message ids", purged);
+        } catch (DataAccessException e) {
+            log.warn("Could not purge expired chat client message ids", e);
+        }
+    }
+
+    private ChatMessageDto sendOnce(String key, Entry mine, Supplier<ChatMessageDto> send) {
+        try {
+            ChatMessageDto sent = send.get();
+            mine.result.complete(sent);
+            return sent;
+        } catch (RuntimeException e) {
+            synchronized (sends) {
+                sends.remove(key, mine);
+            }
+            mine.result.complete(null);
+            throw e;
+        }
+    }
+
+    // The original message, or null if its send failed
+    private static ChatMessageDto await(Entry entry) {
+        try {
+            return entry.result.get(WAIT_FOR_ORIGINAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the original chat message", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("The original chat message is still being sent, retry later", e);
+        }
+    }
+
+    private static String key(String senderUsername, String clientMessageId) {
+        return senderUsername + '\0' + clientMessageId;
+    }
+
+    private static final class Entry {
+
+        private final long createdAt;
+        private final CompletableFuture<ChatMessageDto> result = new CompletableFuture<>();
+
+        Entry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long createdBefore) {
+            return createdAt < createdBefore && result.isDone();
+        }
+    }
+}
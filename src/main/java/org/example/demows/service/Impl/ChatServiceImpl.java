@@ -5,21 +5,32 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ChatConversationDto;
+import org.example.demows.dto.ChatConversationPageDto;
 import org.example.demows.dto.ChatMessageDto;
+import org.example.demows.dto.ChatReadReceiptDto;
 import org.example.demows.dto.ChatRequestDto;
 import org.example.demows.dto.WebSocketMessage;
 import org.example.demows.dto.WebSocketMessageType;
+import org.example.demows.entity.ChatConversation;
 import org.example.demows.entity.ChatMessage;
 import org.example.demows.exception.ResourceNotFoundException;
+import org.example.demows.repository.ChatConversationRepository;
 import org.example.demows.repository.ChatMessageRepository;
 import org.example.demows.service.ChatService;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 @Service
@@ -29,58 +40,173 @@ import java.util.Random;
 public class ChatServiceImpl implements ChatService {
     
     private final ChatMessageRepository chatMessageRepository;
+    private final ChatConversationRepository chatConversationRepository;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatConversationCache chatConversationCache;
+    private final ChatUnreadCounters chatUnreadCounters;
+    private final ChatMessageArchive chatMessageArchive;
+    private final ChatSendDeduplicator chatSendDeduplicator;
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final SimpMessagingTemplate messagingTemplate;
     private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
     
     private static final String CHAT_TOPIC = "chat-messages";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // Months before the current one whose partitions are searched first
+    private static final int HOT_MONTHS = 1;
     private final Random random = new Random();
 
     @Override
-    public List<ChatMessageDto> getUserChats(String username) {
+    public List<ChatConversationDto> getUserChats(String username) {
         log.info("Fetching chat conversations for user: {}", username);
-        List<ChatMessage> lastMessages = chatMessageRepository.findLastMessagesForUser(username);
-        return lastMessages.stream()
+        return chatConversationRepository.findByOwnerUsernameOrderByLastMessageAtDesc(username).stream()
                 .map(this::mapToDto)
                 .toList();
     }
 
     @Override
-    public List<ChatMessageDto> getConversation(String username, String otherUsername) {
-        log.info("Fetching conversation between {} and {}", username, otherUsername);
-        List<ChatMessage> messages = chatMessageRepository.findConversationBetweenUsers(username, otherUsername);
-        return messages.stream()
-                .map(this::mapToDto)
-                .toList();
+    public ChatConversationPageDto getConversation(String username, String otherUsername, Long beforeId, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        log.info("Fetching conversation between {} and {} [before: {}, limit: {}]", username, otherUsername, beforeId, pageSize);
+
+        // One extra row tells whether an older page exists
+        List<ChatMessageDto> messages = chatConversationCache.page(username, otherUsername, beforeId, pageSize + 1);
+        if (messages == null) {
+            messages = loadConversation(username, otherUsername, beforeId, pageSize + 1);
+        }
+
+        boolean hasMore = messages.size() > pageSize;
+        List<ChatMessageDto> dtos = messages.subList(0, Math.min(pageSize, messages.size()));
+
+        return ChatConversationPageDto.builder()
+                .otherUsername(otherUsername)
+                .messages(dtos)
+                .nextCursor(hasMore ? dtos.get(dtos.size() - 1).getId() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Loads up to {@code count} messages from the database, newest first. Loading the newest page
+     * (re)seeds the conversation cache, with at least a full buffer.
+     */
+    private List<ChatMessageDto> loadConversation(String username, String otherUsername, Long beforeId, int count) {
+        if (beforeId != null) {
+            return findMessages(username, otherUsername, beforeId, count).stream().map(this::mapToDto).toList();
+        }
+
+        int seedSize = Math.max(count, chatConversationCache.capacity());
+        List<ChatMessageDto> newest = findMessages(username, otherUsername, Long.MAX_VALUE, seedSize + 1).stream()
+                .map(this::mapToDto).toList();
+        boolean complete = newest.size() <= seedSize;
+        chatConversationCache.seed(username, otherUsername, complete ? newest : newest.subList(0, seedSize), complete);
+        return newest.subList(0, Math.min(count, newest.size()));
+    }
+
+    /**
+     * Up to {@code count} messages older than {@code beforeId}, newest first: from the partitions of the hot
+     * window first, and from older partitions and then the archive only when those run out.
+     */
+    private List<ChatMessage> findMessages(String username, String otherUsername, long beforeId, int count) {
+        long conversationId = ChatMessage.conversationIdOf(username, otherUsername);
+        LocalDateTime hotSince = LocalDate.now().withDayOfMonth(1).minusMonths(HOT_MONTHS).atStartOfDay();
+
+        List<ChatMessage> messages = new ArrayList<>(chatMessageRepository.findRecentConversationPage(
+                conversationId, username, otherUsername, beforeId, hotSince, PageRequest.of(0, count)));
+        if (messages.size() < count) {
+            messages.addAll(chatMessageRepository.findOlderConversationPage(conversationId, username, otherUsername,
+                    oldestId(messages, beforeId), hotSince, PageRequest.of(0, count - messages.size())));
+        }
+        if (messages.size() < count) {
+            messages.addAll(chatMessageArchive.findPage(conversationId, username, otherUsername,
+                    oldestId(messages, beforeId), count - messages.size()));
+        }
+        return messages;
+    }
+
+    private static long oldestId(List<ChatMessage> newestFirst, long beforeId) {
+        return newestFirst.isEmpty() ? beforeId : newestFirst.get(newestFirst.size() - 1).getId();
     }
 
+    // Not transactional itself: waiting for the writer (see original) must not hold a connection and transaction
     @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     public ChatMessageDto sendMessage(String senderUsername, ChatRequestDto request) {
+        // A retry of a message already sent gets the original back, without another insert or fan-out
+        return chatSendDeduplicator.send(senderUsername, request.getClientMessageId(),
+                () -> send(senderUsername, request));
+    }
+
+    private ChatMessageDto send(String senderUsername, ChatRequestDto request) {
+        SendResult result = new TransactionTemplate(transactionManager).execute(status -> trySend(senderUsername, request));
+        if (result.originalId() != null) {
+            log.info("Collapsed retry of chat message {} from {} into message {}", request.getClientMessageId(), senderUsername, result.originalId());
+            return original(result.originalId(), request.getClientMessageId());
+        }
+        return result.sent();
+    }
+
+    // The claim commits together with the message when the writer falls back to writing it synchronously
+    private SendResult trySend(String senderUsername, ChatRequestDto request) {
         log.info("Sending message from {} to {}: {}", senderUsername, request.getReceiverUsername(), request.getMessage());
         
+        long id = chatMessageWriter.nextId();
+        LocalDateTime now = LocalDateTime.now();
+        if (request.getClientMessageId() != null) {
+            // Missed by the dedupe window (restart, other instance): the claim decides before anything is delivered
+            Long originalId = chatSendDeduplicator.claim(senderUsername, request.getClientMessageId(), id, now);
+            if (originalId != null) {
+                return new SendResult(null, originalId);
+            }
+        }
+        
         ChatMessage chatMessage = ChatMessage.builder()
+                .id(id)
                 .senderUsername(senderUsername)
                 .receiverUsername(request.getReceiverUsername())
+                .conversationId(ChatMessage.conversationIdOf(senderUsername, request.getReceiverUsername()))
                 .message(request.getMessage())
                 .messageType(ChatMessage.MessageType.TEXT)
-                .timestamp(LocalDateTime.now())
+                .timestamp(now)
                 .isRead(false)
                 .isDeleted(false)
+                .clientMessageId(request.getClientMessageId())
                 .build();
         
-        ChatMessage savedMessage = chatMessageRepository.save(chatMessage);
-        ChatMessageDto dto = mapToDto(savedMessage);
+        // Written behind (together with both inbox entries); delivery does not wait for the database
+        chatMessageWriter.write(chatMessage);
+        ChatMessageDto dto = mapToDto(chatMessage);
+        chatConversationCache.put(dto);
+        chatUnreadCounters.increment(chatMessage.getReceiverUsername(), senderUsername);
         
         // Publish real-time update
         publishChatMessage(dto);
         
-        return dto;
+        return new SendResult(dto, null);
+    }
+
+    private ChatMessageDto original(long messageId, String clientMessageId) {
+        // Written behind: the original may still be queued (here or on the instance that sent it)
+        chatMessageWriter.flush();
+        ChatMessage original = chatMessageRepository.findById(messageId)
+                .orElseThrow(() -> new IllegalStateException("The original chat message is still being sent, retry later"));
+        original.setClientMessageId(clientMessageId);
+        return mapToDto(original);
     }
 
     @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     public ChatMessageDto markMessageAsRead(Long messageId, String username) {
         log.info("Marking message {} as read by user: {}", messageId, username);
         
+        // Messages still queued for the writer are not in the table yet; waited for before the transaction starts
+        chatMessageWriter.flush();
+        return new TransactionTemplate(transactionManager).execute(status -> markRead(messageId, username));
+    }
+
+    private ChatMessageDto markRead(Long messageId, String username) {
         ChatMessage message = chatMessageRepository.findById(messageId)
                 .orElseThrow(() -> new ResourceNotFoundException("ChatMessage", "id", messageId));
         
@@ -89,11 +215,17 @@ public class ChatServiceImpl implements ChatService {
             throw new ResourceNotFoundException("ChatMessage", "id", messageId);
         }
         
+        boolean wasUnread = !message.isRead();
         message.setRead(true);
         message.setReadAt(LocalDateTime.now());
         
         ChatMessage updatedMessage = chatMessageRepository.save(message);
+        if (wasUnread && !message.isDeleted()) {
+            chatConversationRepository.decrementUnread(username, message.getSenderUsername(), 1);
+            chatUnreadCounters.decrement(username, message.getSenderUsername());
+        }
         ChatMessageDto dto = mapToDto(updatedMessage);
+        chatConversationCache.put(dto);
         
         // Publish update
         publishChatMessage(dto);
@@ -102,38 +234,56 @@ public class ChatServiceImpl implements ChatService {
     }
 
     @Override
-    public List<ChatMessageDto> markConversationAsRead(String username, String otherUsername) {
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public ChatReadReceiptDto markConversationAsRead(String username, String otherUsername) {
         log.info("Marking conversation between {} and {} as read", username, otherUsername);
         
-        List<ChatMessage> unreadMessages = chatMessageRepository.findUnreadMessagesByReceiverUsername(username)
-                .stream()
-                .filter(msg -> msg.getSenderUsername().equals(otherUsername))
-                .toList();
-        
-        for (ChatMessage message : unreadMessages) {
-            message.setRead(true);
-            message.setReadAt(LocalDateTime.now());
-        }
+        // Queued messages must be written first: written later, they would stay unread and count again.
+        // Waited for before the transaction starts, so a slow writer does not hold a connection.
+        chatMessageWriter.flush();
+        return new TransactionTemplate(transactionManager).execute(status -> markConversationRead(username, otherUsername));
+    }
+
+    private ChatReadReceiptDto markConversationRead(String username, String otherUsername) {
+        LocalDateTime readAt = LocalDateTime.now();
+        ChatMessageRepository.ReadUpTo marked = chatMessageRepository.markConversationRead(
+                ChatMessage.conversationIdOf(username, otherUsername), otherUsername, username, readAt);
         
-        List<ChatMessage> updatedMessages = chatMessageRepository.saveAll(unreadMessages);
+        ChatReadReceiptDto receipt = ChatReadReceiptDto.builder()
+                .readerUsername(username)
+                .senderUsername(otherUsername)
+                .upToMessageId(marked.getUpToId())
+                .readCount(marked.getReadCount())
+                .readAt(readAt.toString())
+                .build();
         
-        // Publish updates
-        updatedMessages.forEach(msg -> publishChatMessage(mapToDto(msg)));
+        chatUnreadCounters.reset(username, otherUsername);
+        if (marked.getReadCount() > 0) {
+            chatConversationRepository.decrementUnread(username, otherUsername, marked.getReadCount());
+            chatConversationCache.markRead(otherUsername, username, marked.getUpToId(), receipt.getReadAt());
+            // One receipt for the whole batch instead of an event per message
+            publishReadReceipt(receipt);
+        }
         
-        return updatedMessages.stream()
-                .map(this::mapToDto)
-                .toList();
+        return receipt;
     }
 
     @Override
     public List<String> getChatPartners(String username) {
         log.info("Fetching chat partners for user: {}", username);
-        return chatMessageRepository.findChatPartnersForUser(username);
+        return chatConversationRepository.findByOwnerUsernameOrderByLastMessageAtDesc(username).stream()
+                .map(ChatConversation::getOtherUsername)
+                .toList();
     }
 
     @Override
     public long getUnreadMessageCount(String username, String otherUsername) {
-        return chatMessageRepository.countUnreadMessagesInConversation(otherUsername, username);
+        return chatUnreadCounters.get(username, otherUsername);
+    }
+
+    @Override
+    public Map<String, Long> getUnreadMessageCounts(String username) {
+        return chatUnreadCounters.getAll(username);
     }
 
     private void publishChatMessage(ChatMessageDto chatMessageDto) {
@@ -163,6 +313,36 @@ public class ChatServiceImpl implements ChatService {
         }
     }
 
+    private ChatConversationDto mapToDto(ChatConversation conversation) {
+        return ChatConversationDto.builder()
+                .otherUsername(conversation.getOtherUsername())
+                .lastMessageId(conversation.getLastMessageId())
+                .lastSenderUsername(conversation.getLastSenderUsername())
+                .lastMessagePreview(conversation.getLastMessagePreview())
+                .lastMessageAt(conversation.getLastMessageAt().toString())
+                .unreadCount(conversation.getUnreadCount())
+                .build();
+    }
+
+    private void publishReadReceipt(ChatReadReceiptDto receipt) {
+        try {
+            WebSocketMessage<ChatReadReceiptDto> message = WebSocketMessage.<ChatReadReceiptDto>builder()
+                    .type(WebSocketMessageType.CHAT_READ_UPTO.name())
+                    .data(receipt)
+                    .timestamp(LocalDateTime.now().toString())
+                    .build();
+            
+            kafkaTemplate.send(CHAT_TOPIC, objectMapper.writeValueAsString(message));
+            
+            // The sender is the one waiting for read receipts
+            messagingTemplate.convertAndSendToUser(receipt.getSenderUsername(), "/queue/chat", message);
+            
+            log.debug("Published read receipt up to {} to: {}", receipt.getUpToMessageId(), receipt.getSenderUsername());
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing read receipt", e);
+        }
+    }
+
     private ChatMessageDto mapToDto(ChatMessage chatMessage) {
         return ChatMessageDto.builder()
                 .id(chatMessage.getId())
@@ -174,6 +354,7 @@ public class ChatServiceImpl implements ChatService {
                 .isRead(chatMessage.isRead())
                 .readAt(chatMessage.getReadAt() != null ? chatMessage.getReadAt().toString() : null)
                 .isDeleted(chatMessage.isDeleted())
+                .clientMessageId(chatMessage.getClientMessageId())
                 .build();
     }
 
@@ -185,4 +366,8 @@ public class ChatServiceImpl implements ChatService {
         // This is just a placeholder for future enhancements
         log.debug("Chat message simulation completed");
     }
+
+    // Either the message sent, or the id of the message that already claimed its client message id
+    private record SendResult(ChatMessageDto sent, Long originalId) {
+    }
 }
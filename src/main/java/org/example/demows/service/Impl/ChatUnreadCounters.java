@@ -0,0 +1,276 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.entity.ChatConversation;
+import org.example.demows.repository.ChatConversationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Unread chat badges as per-(receiver, sender) counters, so badge polling never counts rows.
+ * <p>
+ * Counters live in one Redis hash per receiver (sender -> count), shared by every instance and changed
+ * atomically on send and read. Each instance keeps the badges of the users polling it in memory for
+ * {@code chat.unread.memory-ttl-ms}, so a poll costs at most one Redis read per interval. A hash is seeded from
+ * the inbox summaries ({@code chat_conversations}) when it is missing, in one script that leaves a hash seeded
+ * meanwhile alone. The badges of active users are periodically reconciled against the summaries to repair drift
+ * (lost updates): only counters unchanged since the previous reconcile are corrected, since the summaries lag
+ * the write-behind queue and a counter still moving may count sends not written yet.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatUnreadCounters {
+
+    private static final String KEY_PREFIX = "chat:unread:";
+    // Present once a hash was seeded from the database; a hash created by HINCRBY alone is incomplete
+    private static final String SEEDED_FIELD = "_seeded";
+    private static final Duration KEY_TTL = Duration.ofDays(1);
+    private static final long IDLE_MILLIS = 600_000;
+    // KEYS[1] hash, ARGV[1] ttl seconds, then sender, count pairs; 0 if the hash was seeded already
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '" + SEEDED_FIELD + "') == 1 then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('HSET', KEYS[1], '" + SEEDED_FIELD + "', '1') " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1", Long.class);
+    // KEYS[1] hash, ARGV[1] sender, ARGV[2] delta, ARGV[3] ttl seconds; the new count, the counter is removed at 0.
+    // A hash this creates (not seeded) still expires; an existing one keeps its TTL, so it is re-seeded daily
+    private static final RedisScript<Long> CHANGE_SCRIPT = new DefaultRedisScript<>(
+            "local count = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+            "if count <= 0 then redis.call('HDEL', KEYS[1], ARGV[1]) end " +
+            "if redis.call('TTL', KEYS[1]) == -1 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end " +
+            "return count", Long.class);
+    // KEYS[1] hash, then sender, expected, repaired triples: a counter is set only if it still has the expected value
+    private static final RedisScript<Long> REPAIR_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '" + SEEDED_FIELD + "') == 0 then return 0 end " +
+            "local repaired = 0 " +
+            "for i = 1, #ARGV, 3 do " +
+            "  if tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') == tonumber(ARGV[i + 1]) then " +
+            "    if tonumber(ARGV[i + 2]) > 0 then redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2]) " +
+            "    else redis.call('HDEL', KEYS[1], ARGV[i]) end " +
+            "    repaired = repaired + 1 " +
+            "  end " +
+            "end " +
+            "return repaired", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ChatConversationRepository chatConversationRepository;
+
+    @Value("${chat.unread.memory-ttl-ms:2000}")
+    private long memoryTtlMillis;
+
+    // receiver -> badges as last read from Redis
+    private final ConcurrentMap<String, Badges> badges = new ConcurrentHashMap<>();
+    // receiver -> counters as seen by the previous reconcile
+    private final ConcurrentMap<String, Map<String, Long>> reconciled = new ConcurrentHashMap<>();
+
+    public void increment(String receiverUsername, String senderUsername) {
+        change(receiverUsername, senderUsername, 1);
+    }
+
+    public void decrement(String receiverUsername, String senderUsername) {
+        change(receiverUsername, senderUsername, -1);
+    }
+
+    public void reset(String receiverUsername, String senderUsername) {
+        try {
+            hashes().delete(KEY_PREFIX + receiverUsername, senderUsername);
+        } catch (DataAccessException e) {
+            log.warn("Could not reset unread counter {} <- {}, the next reconcile repairs it", receiverUsername, senderUsername, e);
+        }
+        badges.computeIfPresent(receiverUsername, (receiver, current) -> current.with(senderUsername, 0));
+    }
+
+    public long get(String receiverUsername, String senderUsername) {
+        return getAll(receiverUsername).getOrDefault(senderUsername, 0L);
+    }
+
+    /**
+     * All non-zero badges of a user, sender -> unread count.
+     */
+    public Map<String, Long> getAll(String receiverUsername) {
+        long now = System.currentTimeMillis();
+        Badges current = badges.get(receiverUsername);
+        if (current == null || now - current.loadedAt > memoryTtlMillis) {
+            current = new Badges(load(receiverUsername), now);
+            badges.put(receiverUsername, current);
+        }
+        current.lastRead = now;
+        return current.counts;
+    }
+
+    /**
+     * Corrects the counters of users polled recently that disagree with the unread counts of their inbox
+     * summaries and did not change since the previous run, and forgets the badges of users who stopped polling.
+     */
+    @Scheduled(fixedDelayString = "${chat.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        badges.entrySet().removeIf(entry -> now - entry.getValue().lastRead > IDLE_MILLIS);
+        reconciled.keySet().retainAll(badges.keySet());
+        int repaired = 0;
+        for (String receiverUsername : badges.keySet()) {
+            try {
+                repaired += reconcile(receiverUsername);
+            } catch (DataAccessException e) {
+                log.warn("Could not reconcile unread counters of {}", receiverUsername, e);
+            }
+        }
+        log.debug("Reconciled unread counters of {} users, repaired {} counters", badges.size(), repaired);
+    }
+
+    private int reconcile(String receiverUsername) {
+        String key = KEY_PREFIX + receiverUsername;
+        Map<String, String> hash = hashes().entries(key);
+        if (!hash.containsKey(SEEDED_FIELD)) {
+            reconciled.remove(receiverUsername);
+            seed(receiverUsername);
+            badges.remove(receiverUsername); // reloaded on the next poll
+            return 0;
+        }
+        Map<String, Long> current = counts(hash);
+        Map<String, Long> previous = reconciled.put(receiverUsername, current);
+        if (previous == null) {
+            return 0; // compared from the next run on
+        }
+
+        Map<String, Long> database = fromDatabase(receiverUsername);
+        Set<String> senders = new HashSet<>(current.keySet());
+        senders.addAll(previous.keySet());
+        senders.addAll(database.keySet());
+        List<String> args = new ArrayList<>();
+        for (String sender : senders) {
+            long count = current.getOrDefault(sender, 0L);
+            long expected = database.getOrDefault(sender, 0L);
+            if (count == previous.getOrDefault(sender, 0L) && count != expected) {
+                args.add(sender);
+                args.add(Long.toString(count));
+                args.add(Long.toString(expected));
+            }
+        }
+        if (args.isEmpty()) {
+            return 0;
+        }
+        Long repaired = redisTemplate.execute(REPAIR_SCRIPT, List.of(key), args.toArray());
+        badges.remove(receiverUsername);
+        log.info("Repaired {} drifted unread counters of {}", repaired, receiverUsername);
+        return repaired != null ? repaired.intValue() : 0;
+    }
+
+    private void change(String receiverUsername, String senderUsername, long delta) {
+        Long count;
+        try {
+            count = redisTemplate.execute(CHANGE_SCRIPT, List.of(KEY_PREFIX + receiverUsername), senderUsername,
+                    Long.toString(delta), Long.toString(KEY_TTL.toSeconds()));
+        } catch (DataAccessException e) {
+            log.warn("Could not update unread counter {} <- {}, the next reconcile repairs it", receiverUsername, senderUsername, e);
+            badges.remove(receiverUsername);
+            return;
+        }
+        if (count == null) {
+            badges.remove(receiverUsername);
+            return;
+        }
+        // Read-your-writes on this instance; other instances catch up within the memory TTL
+        long updated = Math.max(count, 0);
+        badges.computeIfPresent(receiverUsername, (receiver, current) -> current.with(senderUsername, updated));
+    }
+
+    private Map<String, Long> load(String receiverUsername) {
+        try {
+            Map<String, String> hash = hashes().entries(KEY_PREFIX + receiverUsername);
+            if (!hash.containsKey(SEEDED_FIELD)) {
+                Map<String, Long> seeded = seed(receiverUsername);
+                if (seeded != null) {
+                    return seeded;
+                }
+                hash = hashes().entries(KEY_PREFIX + receiverUsername); // seeded by someone else meanwhile
+            }
+            return counts(hash);
+        } catch (DataAccessException e) {
+            log.warn("Could not read unread counters of {} from Redis, using the database", receiverUsername, e);
+            return fromDatabase(receiverUsername);
+        }
+    }
+
+    // Replaces the user's unseeded Redis hash with the database counts; null if it was seeded meanwhile
+    private Map<String, Long> seed(String receiverUsername) {
+        Map<String, Long> counts = fromDatabase(receiverUsername);
+        List<String> args = new ArrayList<>();
+        args.add(Long.toString(KEY_TTL.toSeconds()));
+        counts.forEach((sender, count) -> {
+            args.add(sender);
+            args.add(Long.toString(count));
+        });
+        Long seeded = redisTemplate.execute(SEED_SCRIPT, List.of(KEY_PREFIX + receiverUsername), args.toArray());
+        return seeded != null && seeded == 1 ? counts : null;
+    }
+
+    private static Map<String, Long> counts(Map<String, String> hash) {
+        Map<String, Long> counts = new HashMap<>();
+        hash.forEach((sender, count) -> {
+            if (!SEEDED_FIELD.equals(sender) && Long.parseLong(count) > 0) {
+                counts.put(sender, Long.parseLong(count));
+            }
+        });
+        return Map.copyOf(counts);
+    }
+
+    private Map<String, Long> fromDatabase(String receiverUsername) {
+        Map<String, Long> counts = new HashMap<>();
+        for (ChatConversation conversation : chatConversationRepository.findByOwnerUsernameOrderByLastMessageAtDesc(receiverUsername)) {
+            if (conversation.getUnreadCount() > 0) {
+                counts.put(conversation.getOtherUsername(), conversation.getUnreadCount());
+            }
+        }
+        return Map.copyOf(counts);
+    }
+
+    private HashOperations<String, String, String> hashes() {
+        return redisTemplate.opsForHash();
+    }
+
+    private static final class Badges {
+
+        private final Map<String, Long> counts; // immutable
+        private final long loadedAt;
+        private volatile long lastRead;
+
+        Badges(Map<String, Long> counts, long loadedAt) {
+            this.counts = counts;
+            this.loadedAt = loadedAt;
+            this.lastRead = loadedAt;
+        }
+
+        Badges with(String senderUsername, long count) {
+            Map<String, Long> next = new HashMap<>(counts);
+            if (count > 0) {
+                next.put(senderUsername, count);
+            } else {
+                next.remove(senderUsername);
+            }
+            Badges badges = new Badges(Map.copyOf(next), loadedAt);
+            badges.lastRead = lastRead;
+            return badges;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.FixedPointRate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Implied rates for every currency pair the explicitly quoted pairs connect, as a dense n x n matrix of
+ * {@link FixedPointRate} longs indexed by currency index ({@code matrix[from * n + to]}).
+ * <p>
+ * Each currency is valued against a pivot (the best connected currency) through a fixed route of quoted
+ * pairs, so an implied rate is just {@code toPivot[from] / toPivot[to]}. When quoted pairs change, only the
+ * currencies whose route uses them are revalued and only their rows and columns recomputed. Instances are
+ * immutable and live in the rate book snapshot, so implied rates always match the snapshot's sequence.
+ */
+final class CrossRates {
+
+    private static final int NO_CURRENCY = -1;
+
+    static final CrossRates EMPTY = new CrossRates(Topology.of(new long[0], new String[0], new String[0]),
+            new double[0], new long[0], new LocalDateTime[0], new int[0]);
+
+    private final Topology topology;
+    private final double[] toPivot;
+    private final long[] matrix; // 0 = no implied rate (currencies not connected)
+    private final LocalDateTime[] updatedAt; // per currency
+    private final int[] changedCells; // implied cells whose rate changed in the step that produced this instance
+
+    private CrossRates(Topology topology, double[] toPivot, long[] matrix, LocalDateTime[] updatedAt, int[] changedCells) {
+        this.topology = topology;
+        this.toPivot = toPivot;
+        this.matrix = matrix;
+        this.updatedAt = updatedAt;
+        this.changedCells = changedCells;
+    }
+
+    /**
+     * Builds the topology and the full matrix for the quoted pairs (indexed by pair id).
+     */
+    static CrossRates of(String[] fromCurrencies, String[] toCurrencies, long[] rates, LocalDateTime[] lastUpdated) {
+        Topology topology = Topology.of(rates, fromCurrencies, toCurrencies);
+        int n = topology.currencies.length;
+        double[] toPivot = new double[n];
+        LocalDateTime[] updatedAt = new LocalDateTime[n];
+        for (int currency = 0; currency < n; currency++) {
+            toPivot[currency] = topology.valueAgainstPivot(currency, rates);
+            updatedAt[currency] = topology.latestUpdate(currency, lastUpdated);
+        }
+        long[] matrix = new long[n * n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                matrix[from * n + to] = impliedRate(toPivot, from, to);
+            }
+        }
+        return new CrossRates(topology, toPivot, matrix, updatedAt, new int[0]);
+    }
+
+    /**
+     * Revalues the currencies routed through the changed pairs and recomputes only their rows and columns.
+     *
+     * @param rates all quoted rates after the change, indexed by pair id
+     */
+    CrossRates apply(int[] pairIds, int count, long[] rates, LocalDateTime at) {
+        int n = topology.currencies.length;
+        boolean[] touched = new boolean[n];
+        int touchedCount = 0;
+        for (int i = 0; i < count; i++) {
+            for (int currency : topology.dependents[pairIds[i]]) {
+                if (!touched[currency]) {
+                    touched[currency] = true;
+                    touchedCount++;
+                }
+            }
+        }
+        if (touchedCount == 0) {
+            return new CrossRates(topology, toPivot, matrix, updatedAt, new int[0]);
+        }
+
+        double[] nextToPivot = toPivot.clone();
+        LocalDateTime[] nextUpdatedAt = updatedAt.clone();
+        for (int currency = 0; currency < n; currency++) {
+            if (touched[currency]) {
+                nextToPivot[currency] = topology.valueAgainstPivot(currency, rates);
+                nextUpdatedAt[currency] = at;
+            }
+        }
+
+        long[] nextMatrix = matrix.clone();
+        int[] changed = new int[2 * touchedCount * n];
+        int changedCount = 0;
+        for (int currency = 0; currency < n; currency++) {
+            if (!touched[currency]) {
+                continue;
+            }
+            for (int other = 0; other < n; other++) {
+                // Row: currency -> other; column: other -> currency, unless that cell was already done as a row
+                changedCount = recompute(nextMatrix, nextToPivot, currency, other, changed, changedCount);
+                if (!touched[other]) {
+                    changedCount = recompute(nextMatrix, nextToPivot, other, currency, changed, changedCount);
+                }
+            }
+        }
+        return new CrossRates(topology, nextToPivot, nextMatrix, nextUpdatedAt, Arrays.copyOf(changed, changedCount));
+    }
+
+    private int recompute(long[] nextMatrix, double[] nextToPivot, int from, int to, int[] changed, int changedCount) {
+        int cell = from * topology.currencies.length + to;
+        long rate = impliedRate(nextToPivot, from, to);
+        if (rate != nextMatrix[cell]) {
+            nextMatrix[cell] = rate;
+            if (topology.quotedPairIdByCell[cell] < 0) {
+                changed[changedCount++] = cell;
+            }
+        }
+        return changedCount;
+    }
+
+    private static long impliedRate(double[] toPivot, int from, int to) {
+        if (from == to || Double.isNaN(toPivot[from]) || Double.isNaN(toPivot[to])) {
+            return 0;
+        }
+        return Math.round(toPivot[from] / toPivot[to] * FixedPointRate.ONE);
+    }
+
+    /**
+     * Returns the matrix cell of an implied (not quoted) pair, or -1 if there is no implied rate for it.
+     */
+    int impliedCell(String fromCurrency, String toCurrency) {
+        int from = topology.currencyIndex(fromCurrency);
+        int to = topology.currencyIndex(toCurrency);
+        if (from == NO_CURRENCY || to == NO_CURRENCY) {
+            return -1;
+        }
+        int cell = from * topology.currencies.length + to;
+        return topology.quotedPairIdByCell[cell] < 0 && matrix[cell] > 0 ? cell : -1;
+    }
+
+    int size() {
+        return matrix.length;
+    }
+
+    boolean isImplied(int cell) {
+        return topology.quotedPairIdByCell[cell] < 0 && matrix[cell] > 0;
+    }
+
+    String fromCurrency(int cell) {
+        return topology.currencies[cell / topology.currencies.length];
+    }
+
+    String toCurrency(int cell) {
+        return topology.currencies[cell % topology.currencies.length];
+    }
+
+    long rate(int cell) {
+        return matrix[cell];
+    }
+
+    LocalDateTime updatedAt(int cell) {
+        int n = topology.currencies.length;
+        LocalDateTime from = updatedAt[cell / n];
+        LocalDateTime to = updatedAt[cell % n];
+        if (from == null || to == null) {
+            return from != null ? from : to;
+        }
+        return from.isAfter(to) ? from : to;
+    }
+
+    int[] changedCells() {
+        return changedCells;
+    }
+
+    /**
+     * Currency indexes, routes to the pivot and quoted cells. Only rebuilt when the rate book is (re)loaded.
+     */
+    private static final class Topology {
+
+        private final String[] currencies;
+        // 15-bit currency code (see ExchangeRateBook#pairCode) -> currency index
+        private final int[] indexByCode;
+        // currency index -> quoted pair ids from the currency to the pivot, and whether each step is inverted
+        private final int[][] routePairIds;
+        private final boolean[][] routeInverted;
+        // pair id -> currency indexes whose route uses the pair
+        private final int[][] dependents;
+        // cell -> quoted pair id, or -1 for implied cells
+        private final int[] quotedPairIdByCell;
+
+        private Topology(String[] currencies, int[] indexByCode, int[][] routePairIds, boolean[][] routeInverted,
+                         int[][] dependents, int[] quotedPairIdByCell) {
+            this.currencies = currencies;
+            this.indexByCode = indexByCode;
+            this.routePairIds = routePairIds;
+            this.routeInverted = routeInverted;
+            this.dependents = dependents;
+            this.quotedPairIdByCell = quotedPairIdByCell;
+        }
+
+        static Topology of(long[] rates, String[] fromCurrencies, String[] toCurrencies) {
+            int pairCount = fromCurrencies.length;
+            int[] indexByCode = new int[1 << 15];
+            Arrays.fill(indexByCode, NO_CURRENCY);
+            List<String> currencies = new ArrayList<>();
+            int[] fromIndex = new int[pairCount];
+            int[] toIndex = new int[pairCount];
+            for (int pairId = 0; pairId < pairCount; pairId++) {
+                fromIndex[pairId] = register(fromCurrencies[pairId], indexByCode, currencies);
+                toIndex[pairId] = register(toCurrencies[pairId], indexByCode, currencies);
+            }
+
+            int n = currencies.size();
+            int[] quotedPairIdByCell = new int[n * n];
+            Arrays.fill(quotedPairIdByCell, -1);
+            int[] degree = new int[n];
+            List<List<Integer>> edges = new ArrayList<>(n);
+            for (int currency = 0; currency < n; currency++) {
+                edges.add(new ArrayList<>());
+            }
+            for (int pairId = 0; pairId < pairCount; pairId++) {
+                if (rates[pairId] <= 0 || fromIndex[pairId] == toIndex[pairId]) {
+                    continue;
+                }
+                quotedPairIdByCell[fromIndex[pairId] * n + toIndex[pairId]] = pairId;
+                edges.get(fromIndex[pairId]).add(pairId);
+                edges.get(toIndex[pairId]).add(pairId);
+                degree[fromIndex[pairId]]++;
+                degree[toIndex[pairId]]++;
+            }
+
+            // Breadth-first from the best connected currency gives every reachable currency a shortest route
+            int[][] routePairIds = new int[n][];
+            boolean[][] routeInverted = new boolean[n][];
+            int pivot = 0;
+            for (int currency = 1; currency < n; currency++) {
+                if (degree[currency] > degree[pivot]) {
+                    pivot = currency;
+                }
+            }
+            List<List<Integer>> dependents = new ArrayList<>(pairCount);
+            for (int pairId = 0; pairId < pairCount; pairId++) {
+                dependents.add(new ArrayList<>());
+            }
+            if (n > 0) {
+                routePairIds[pivot] = new int[0];
+                routeInverted[pivot] = new boolean[0];
+                Deque<Integer> queue = new ArrayDeque<>();
+                queue.add(pivot);
+                while (!queue.isEmpty()) {
+                    int reached = queue.poll();
+                    for (int pairId : edges.get(reached)) {
+                        // Quoted as currency -> reached: the step is the rate itself, otherwise its inverse
+                        boolean inverted = fromIndex[pairId] == reached;
+                        int currency = inverted ? toIndex[pairId] : fromIndex[pairId];
+                        if (routePairIds[currency] != null) {
+                            continue;
+                        }
+                        int direct = quotedPairIdByCell[currency * n + reached];
+                        int step = direct >= 0 ? direct : pairId;
+                        routePairIds[currency] = prepend(step, routePairIds[reached]);
+                        routeInverted[currency] = prepend(direct < 0, routeInverted[reached]);
+                        queue.add(currency);
+                    }
+                }
+            }
+            for (int currency = 0; currency < n; currency++) {
+                if (routePairIds[currency] == null) {
+                    continue;
+                }
+                for (int pairId : routePairIds[currency]) {
+                    dependents.get(pairId).add(currency);
+                }
+            }
+
+            int[][] dependentArrays = new int[pairCount][];
+            for (int pairId = 0; pairId < pairCount; pairId++) {
+                dependentArrays[pairId] = dependents.get(pairId).stream().mapToInt(Integer::intValue).toArray();
+            }
+            return new Topology(currencies.toArray(String[]::new), indexByCode, routePairIds, routeInverted,
+                    dependentArrays, quotedPairIdByCell);
+        }
+
+        private static int register(String currency, int[] indexByCode, List<String> currencies) {
+            int code = ExchangeRateBook.currencyCode(currency);
+            if (indexByCode[code] == NO_CURRENCY) {
+                indexByCode[code] = currencies.size();
+                currencies.add(currency);
+            }
+            return indexByCode[code];
+        }
+
+        int currencyIndex(String currency) {
+            int code = ExchangeRateBook.currencyCode(currency);
+            return code < 0 ? NO_CURRENCY : indexByCode[code];
+        }
+
+        /**
+         * Value of one unit of the currency in pivot units, NaN if no route connects it to the pivot.
+         */
+        double valueAgainstPivot(int currency, long[] rates) {
+            int[] route = routePairIds[currency];
+            if (route == null) {
+                return Double.NaN;
+            }
+            double value = 1.0;
+            for (int step = 0; step < route.length; step++) {
+                double rate = (double) rates[route[step]] / FixedPointRate.ONE;
+                value = routeInverted[currency][step] ? value / rate : value * rate;
+            }
+            return value;
+        }
+
+        LocalDateTime latestUpdate(int currency, LocalDateTime[] lastUpdated) {
+            LocalDateTime latest = null;
+            if (routePairIds[currency] != null) {
+                for (int pairId : routePairIds[currency]) {
+                    LocalDateTime updated = lastUpdated[pairId];
+                    if (updated != null && (latest == null || updated.isAfter(latest))) {
+                        latest = updated;
+                    }
+                }
+            }
+            return latest;
+        }
+
+        private static int[] prepend(int value, int[] values) {
+            int[] result = new int[values.length + 1];
+            result[0] = value;
+            System.arraycopy(values, 0, result, 1, values.length);
+            return result;
+        }
+
+        private static boolean[] prepend(boolean value, boolean[] values) {
+            boolean[] result = new boolean[values.length + 1];
+            result[0] = value;
+            System.arraycopy(values, 0, result, 1, values.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.demows.service.Impl;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.TransactionException;
+
+/**
+ * Classifies write failures of the background writers: a transient failure is worth retrying as is,
+ * anything else means the database rejected the data and retrying the same rows cannot succeed.
+ */
+final class DataAccessFailures {
+
+    private DataAccessFailures() {
+    }
+
+    // The database being unavailable or contended, as opposed to rejecting the data
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof TransactionException;
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ExchangeRateDto;
+import org.example.demows.dto.FixedPointRate;
+import org.example.demows.entity.ExchangeRate;
+import org.example.demows.repository.ExchangeRateRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * In-memory rate book, authoritative for every exchange-rate read.
+ * <p>
+ * The book is an immutable {@link Snapshot} behind a volatile reference: readers never lock or touch the
+ * database, writers build a new snapshot and swap it in. Writes are serialized on the book itself, the
+ * database is only updated afterwards (see {@link ExchangeRatePersister}).
+ * <p>
+ * Each pair gets a dense pair id when the book is loaded; rates are kept as {@link FixedPointRate} longs in
+ * primitive arrays indexed by it, and lookups by currency go through a packed pair code. Every snapshot also
+ * carries the {@link CrossRates} implied by its quoted rates, for pairs that are not quoted themselves.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRateBook {
+
+    private final ExchangeRateRepository exchangeRateRepository;
+
+    // Seeded from the clock so the stream sequence keeps increasing across restarts
+    private volatile Snapshot current = new Snapshot(System.currentTimeMillis(), Pairs.EMPTY, new long[0], new LocalDateTime[0],
+            CrossRates.EMPTY);
+
+    /**
+     * Loads the book once the application (including the data initializer) is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public synchronized void load() {
+        List<ExchangeRate> entities = exchangeRateRepository.findAll().stream()
+                .filter(rate -> pairCode(rate.getFromCurrency(), rate.getToCurrency()) >= 0)
+                .toList();
+
+        int size = entities.size();
+        long[] rowIds = new long[size];
+        String[] fromCurrencies = new String[size];
+        String[] toCurrencies = new String[size];
+        long[] rates = new long[size];
+        LocalDateTime[] lastUpdated = new LocalDateTime[size];
+        for (int pairId = 0; pairId < size; pairId++) {
+            ExchangeRate entity = entities.get(pairId);
+            rowIds[pairId] = entity.getId();
+            fromCurrencies[pairId] = entity.getFromCurrency();
+            toCurrencies[pairId] = entity.getToCurrency();
+            // Database boundary: the only BigDecimal -> fixed-point conversion on the read side
+            rates[pairId] = FixedPointRate.fromBigDecimal(entity.getRate());
+            lastUpdated[pairId] = entity.getLastUpdated();
+        }
+
+        CrossRates cross = CrossRates.of(fromCurrencies, toCurrencies, rates, lastUpdated);
+        current = new Snapshot(current.sequence(), new Pairs(rowIds, fromCurrencies, toCurrencies), rates, lastUpdated, cross);
+        log.info("Loaded {} exchange rates into the rate book", size);
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Applies new rates for the first {@code count} entries of {@code pairIds} as the next sequence number
+     * and returns the snapshot that now is current.
+     */
+    public synchronized Snapshot apply(int[] pairIds, long[] rates, int count, LocalDateTime updatedAt) {
+        Snapshot previous = current;
+        long[] nextRates = previous.rates.clone();
+        LocalDateTime[] nextLastUpdated = previous.lastUpdated.clone();
+        for (int i = 0; i < count; i++) {
+            nextRates[pairIds[i]] = rates[i];
+            nextLastUpdated[pairIds[i]] = updatedAt;
+        }
+        CrossRates nextCross = previous.cross.apply(pairIds, count, nextRates, updatedAt);
+        current = new Snapshot(previous.sequence() + 1, previous.pairs, nextRates, nextLastUpdated, nextCross);
+        return current;
+    }
+
+    /**
+     * Packs a pair of 3-letter ISO currency codes into 30 bits (5 bits per letter), or -1 if either is not one.
+     */
+    public static int pairCode(String fromCurrency, String toCurrency) {
+        int from = currencyCode(fromCurrency);
+        int to = currencyCode(toCurrency);
+        return from < 0 || to < 0 ? -1 : from << 15 | to;
+    }
+
+    // 15-bit code of a 3-letter currency, or -1
+    static int currencyCode(String currency) {
+        if (currency == null || currency.length() != 3) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = currency.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            code = code << 5 | (c - 'A' + 1);
+        }
+        return code;
+    }
+
+    /**
+     * Immutable view of every rate at one sequence number. Pair ids index the arrays directly.
+     */
+    public static final class Snapshot {
+
+        private final long sequence;
+        private final Pairs pairs;
+        private final long[] rates;
+        private final LocalDateTime[] lastUpdated;
+        private final CrossRates cross;
+        private volatile List<ExchangeRateDto> dtos; // built on first read, racing builds are harmless
+
+        private Snapshot(long sequence, Pairs pairs, long[] rates, LocalDateTime[] lastUpdated, CrossRates cross) {
+            this.sequence = sequence;
+            this.pairs = pairs;
+            this.rates = rates;
+            this.lastUpdated = lastUpdated;
+            this.cross = cross;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        public int size() {
+            return rates.length;
+        }
+
+        /**
+         * Returns the pair id of the currency pair, or -1 if the book does not quote it.
+         */
+        public int pairId(String fromCurrency, String toCurrency) {
+            return pairs.idOf(pairCode(fromCurrency, toCurrency));
+        }
+
+        public long rate(int pairId) {
+            return rates[pairId];
+        }
+
+        public long rowId(int pairId) {
+            return pairs.rowIds[pairId];
+        }
+
+        public String fromCurrency(int pairId) {
+            return pairs.fromCurrencies[pairId];
+        }
+
+        public String toCurrency(int pairId) {
+            return pairs.toCurrencies[pairId];
+        }
+
+        public ExchangeRateDto toDto(int pairId) {
+            return ExchangeRateDto.builder()
+                    .id(pairs.rowIds[pairId])
+                    .fromCurrency(pairs.fromCurrencies[pairId])
+                    .toCurrency(pairs.toCurrencies[pairId])
+                    .rate(rates[pairId])
+                    .lastUpdated(lastUpdated[pairId])
+                    .build();
+        }
+
+        /**
+         * Returns the implied rate of a pair that is not quoted itself, or {@code null} if the quoted pairs
+         * do not connect its currencies.
+         */
+        public ExchangeRateDto impliedRate(String fromCurrency, String toCurrency) {
+            int cell = cross.impliedCell(fromCurrency, toCurrency);
+            return cell >= 0 ? impliedDto(cell) : null;
+        }
+
+        /**
+         * All implied rates whose currencies match the filter.
+         */
+        public List<ExchangeRateDto> impliedRates(BiPredicate<String, String> filter) {
+            List<ExchangeRateDto> result = new ArrayList<>();
+            for (int cell = 0; cell < cross.size(); cell++) {
+                if (cross.isImplied(cell) && filter.test(cross.fromCurrency(cell), cross.toCurrency(cell))) {
+                    result.add(impliedDto(cell));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Implied rates changed by the update that produced this snapshot.
+         */
+        public List<ExchangeRateDto> changedImpliedRates() {
+            int[] cells = cross.changedCells();
+            List<ExchangeRateDto> result = new ArrayList<>(cells.length);
+            for (int cell : cells) {
+                if (cross.isImplied(cell)) {
+                    result.add(impliedDto(cell));
+                }
+            }
+            return result;
+        }
+
+        private ExchangeRateDto impliedDto(int cell) {
+            return ExchangeRateDto.builder()
+                    .fromCurrency(cross.fromCurrency(cell))
+                    .toCurrency(cross.toCurrency(cell))
+                    .rate(cross.rate(cell))
+                    .lastUpdated(cross.updatedAt(cell))
+                    .implied(true)
+                    .build();
+        }
+
+        /**
+         * All rates in pair id order. The list is read-only and its DTOs are shared with every reader.
+         */
+        public List<ExchangeRateDto> rates() {
+            List<ExchangeRateDto> result = dtos;
+            if (result == null) {
+                List<ExchangeRateDto> built = new ArrayList<>(rates.length);
+                for (int pairId = 0; pairId < rates.length; pairId++) {
+                    built.add(toDto(pairId));
+                }
+                result = Collections.unmodifiableList(built);
+                dtos = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Pair id -> pair metadata, plus the pair code index. Only replaced when the book is (re)loaded.
+     */
+    private static final class Pairs {
+
+        static final Pairs EMPTY = new Pairs(new long[0], new String[0], new String[0]);
+
+        private final long[] rowIds;
+        private final String[] fromCurrencies;
+        private final String[] toCurrencies;
+        // Pair codes in ascending order, and the pair id at the same position
+        private final int[] sortedCodes;
+        private final int[] sortedIds;
+
+        Pairs(long[] rowIds, String[] fromCurrencies, String[] toCurrencies) {
+            this.rowIds = rowIds;
+            this.fromCurrencies = fromCurrencies;
+            this.toCurrencies = toCurrencies;
+
+            int size = rowIds.length;
+            long[] packed = new long[size];
+            for (int pairId = 0; pairId < size; pairId++) {
+                packed[pairId] = (long) pairCode(fromCurrencies[pairId], toCurrencies[pairId]) << 32 | pairId;
+            }
+            Arrays.sort(packed);
+            this.sortedCodes = new int[size];
+            this.sortedIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedCodes[i] = (int) (packed[i] >>> 32);
+                sortedIds[i] = (int) packed[i];
+            }
+        }
+
+        int idOf(int code) {
+            if (code < 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(sortedCodes, code);
+            return index >= 0 ? sortedIds[index] : -1;
+        }
+    }
+}
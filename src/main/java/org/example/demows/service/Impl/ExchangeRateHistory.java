@@ -0,0 +1,424 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.CandleInterval;
+import org.example.demows.dto.ExchangeRateCandleDto;
+import org.example.demows.dto.FixedPointRate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only exchange rate tick history with rolling OHLC candles.
+ * <p>
+ * Ticks are appended to columnar in-memory segments (pair id, time and fixed-point rate in parallel primitive
+ * arrays) which are flushed to {@code exchange_rate_ticks} as JDBC batches. Every tick also rolls the 1m, 5m, 1h
+ * and 1d candles of its pair, kept in fixed-size ring buffers, so candle reads never touch the database.
+ * On startup the candles are rebuilt from the persisted ticks of the warm-up window; nothing reads older ticks,
+ * so those are purged once past {@code exchange-rates.history.retention-hours}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRateHistory implements DisposableBean {
+
+    private static final String INSERT_TICK_SQL = "INSERT INTO exchange_rate_ticks (rate_id, rate, recorded_at) VALUES (?, ?, ?)";
+    private static final String SELECT_TICKS_SQL = "SELECT rate_id, rate, recorded_at FROM exchange_rate_ticks WHERE recorded_at >= ? ORDER BY recorded_at, id";
+    // In chunks, so one purge never holds a huge delete open
+    private static final String PURGE_TICKS_SQL = "DELETE FROM exchange_rate_ticks WHERE id IN " +
+            "(SELECT id FROM exchange_rate_ticks WHERE recorded_at < ? LIMIT ?)";
+    private static final int PURGE_CHUNK_SIZE = 10_000;
+
+    private static final int SEGMENT_SIZE = 4096;
+    // Sealed segments kept while the database is unavailable, the oldest are dropped beyond this
+    private static final int MAX_SEALED_SEGMENTS = 256;
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExchangeRateBook exchangeRateBook;
+
+    @Value("${exchange-rates.history.warm-up-hours:24}")
+    private int warmUpHours;
+
+    @Value("${exchange-rates.history.retention-hours:48}")
+    private int retentionHours;
+
+    private final Object lock = new Object();
+    private TickSegment open = new TickSegment(); // guarded by lock
+    private final Deque<TickSegment> sealed = new ArrayDeque<>(); // guarded by lock
+    // pair id -> candle series per interval (indexed by ordinal); the array is replaced when it grows
+    private volatile CandleSeries[][] candles = new CandleSeries[0][];
+    // Time of the first tick recorded by this instance; warm-up replays only persisted ticks before it
+    private volatile long firstRecordedAt = Long.MAX_VALUE;
+
+    /**
+     * Records the first {@code count} entries of a tick. Called in sequence order by the publisher.
+     */
+    public void record(int[] pairIds, long[] rates, int count, long recordedAt) {
+        synchronized (lock) {
+            if (firstRecordedAt == Long.MAX_VALUE) {
+                firstRecordedAt = recordedAt;
+            }
+            for (int i = 0; i < count; i++) {
+                open.append(pairIds[i], recordedAt, rates[i]);
+                if (open.isFull()) {
+                    seal();
+                }
+                for (CandleSeries series : seriesFor(pairIds[i])) {
+                    series.update(recordedAt, rates[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} of the most recent candles of a pair, oldest first.
+     * Intervals without any tick have no candle.
+     */
+    public List<ExchangeRateCandleDto> getCandles(int pairId, CandleInterval interval, int limit) {
+        CandleSeries[][] current = candles;
+        if (pairId >= current.length || current[pairId] == null) {
+            return List.of();
+        }
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        return current[pairId][interval.ordinal()].latest(limit, snapshot.fromCurrency(pairId), snapshot.toCurrency(pairId));
+    }
+
+    /**
+     * Writes sealed segments and whatever the open segment holds to the database.
+     */
+    @Scheduled(fixedDelay = 10_000)
+    public void flush() {
+        List<TickSegment> segments;
+        synchronized (lock) {
+            if (open.size > 0) {
+                seal();
+            }
+            segments = new ArrayList<>(sealed);
+            sealed.clear();
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        for (int i = 0; i < segments.size(); i++) {
+            TickSegment segment = segments.get(i);
+            try {
+                jdbcTemplate.batchUpdate(INSERT_TICK_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int index) throws SQLException {
+                        ps.setLong(1, snapshot.rowId(segment.pairIds[index]));
+                        ps.setBigDecimal(2, FixedPointRate.toBigDecimal(segment.rates[index]));
+                        ps.setTimestamp(3, new Timestamp(segment.times[index]));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return segment.size;
+                    }
+                });
+                log.debug("Flushed {} exchange rate ticks", segment.size);
+            } catch (DataAccessException e) {
+                if (DataAccessFailures.isTransient(e)) {
+                    log.error("Error flushing exchange rate ticks, retrying with the next flush", e);
+                    requeue(segments.subList(i, segments.size()));
+                    return;
+                }
+                log.warn("Exchange rate tick batch of {} rejected ({}), writing the ticks one by one", segment.size, e.getMessage());
+                TickSegment unwritten = writeApart(segment, snapshot);
+                if (unwritten.size > 0) {
+                    log.error("Error flushing {} exchange rate ticks, retrying with the next flush", unwritten.size);
+                    List<TickSegment> retry = new ArrayList<>();
+                    retry.add(unwritten);
+                    retry.addAll(segments.subList(i + 1, segments.size()));
+                    requeue(retry);
+                    return;
+                }
+            }
+        }
+    }
+
+    // Ticks the database rejects are dropped; returns those not written because it became unavailable meanwhile
+    private TickSegment writeApart(TickSegment segment, ExchangeRateBook.Snapshot snapshot) {
+        TickSegment unwritten = new TickSegment();
+        for (int index = 0; index < segment.size; index++) {
+            int pairId = segment.pairIds[index];
+            try {
+                jdbcTemplate.update(INSERT_TICK_SQL, snapshot.rowId(pairId),
+                        FixedPointRate.toBigDecimal(segment.rates[index]), new Timestamp(segment.times[index]));
+            } catch (DataAccessException e) {
+                if (DataAccessFailures.isTransient(e)) {
+                    for (int rest = index; rest < segment.size; rest++) {
+                        unwritten.append(segment.pairIds[rest], segment.times[rest], segment.rates[rest]);
+                    }
+                    return unwritten;
+                }
+                log.error("Exchange rate tick {}-{} = {} at {} rejected by the database, not persisted",
+                        snapshot.fromCurrency(pairId), snapshot.toCurrency(pairId),
+                        FixedPointRate.toBigDecimal(segment.rates[index]), Instant.ofEpochMilli(segment.times[index]), e);
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * Deletes the ticks older than the retention, which never goes below the warm-up window.
+     */
+    @Scheduled(fixedDelayString = "${exchange-rates.history.purge-interval-ms:3600000}")
+    public void purge() {
+        Timestamp before = new Timestamp(System.currentTimeMillis() - Math.max(retentionHours, warmUpHours) * 3_600_000L);
+        long purged = 0;
+        try {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(PURGE_TICKS_SQL, before, PURGE_CHUNK_SIZE);
+                purged += deleted;
+            } while (deleted == PURGE_CHUNK_SIZE);
+            log.debug("Purged {} exchange rate ticks recorded before {}", purged, before);
+        } catch (DataAccessException e) {
+            log.warn("Could not purge exchange rate ticks after {} deleted, retrying with the next purge", purged, e);
+        }
+    }
+
+    /**
+     * Rebuilds the candles from the persisted ticks of the warm-up window, after the rate book is loaded.
+     * The replay builds separate candles without holding the lock, so live ticks keep being recorded; those
+     * are then appended to the replayed candles, which replace the live ones.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    public void warmUp() {
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        Map<Long, Integer> pairIdsByRowId = new HashMap<>();
+        for (int pairId = 0; pairId < snapshot.size(); pairId++) {
+            pairIdsByRowId.put(snapshot.rowId(pairId), pairId);
+        }
+        Timestamp since = new Timestamp(System.currentTimeMillis() - warmUpHours * 3_600_000L);
+
+        CandleSeries[][] replayedCandles = new CandleSeries[snapshot.size()][];
+        int[] replayed = new int[1];
+        try {
+            jdbcTemplate.query(SELECT_TICKS_SQL, (RowCallbackHandler) rs -> {
+                Integer pairId = pairIdsByRowId.get(rs.getLong(1));
+                long recordedAt = rs.getTimestamp(3).getTime();
+                // A tick recorded here and flushed already is in the live candles
+                if (pairId != null && recordedAt < firstRecordedAt) {
+                    long rate = FixedPointRate.fromBigDecimal(rs.getBigDecimal(2));
+                    if (replayedCandles[pairId] == null) {
+                        replayedCandles[pairId] = newSeries();
+                    }
+                    for (CandleSeries series : replayedCandles[pairId]) {
+                        series.update(recordedAt, rate);
+                    }
+                    replayed[0]++;
+                }
+            }, since);
+            synchronized (lock) {
+                CandleSeries[][] current = candles;
+                CandleSeries[][] next = Arrays.copyOf(current, Math.max(current.length, replayedCandles.length));
+                for (int pairId = 0; pairId < replayedCandles.length; pairId++) {
+                    if (replayedCandles[pairId] == null) {
+                        continue;
+                    }
+                    if (next[pairId] != null) {
+                        for (CandleInterval interval : INTERVALS) {
+                            replayedCandles[pairId][interval.ordinal()].append(next[pairId][interval.ordinal()]);
+                        }
+                    }
+                    next[pairId] = replayedCandles[pairId];
+                }
+                candles = next;
+            }
+            log.info("Rebuilt exchange rate candles from {} ticks of the last {}h", replayed[0], warmUpHours);
+        } catch (DataAccessException e) {
+            log.warn("Could not rebuild exchange rate candles from tick history", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    // Must be called while holding lock
+    private void seal() {
+        sealed.addLast(open);
+        open = new TickSegment();
+        while (sealed.size() > MAX_SEALED_SEGMENTS) {
+            log.warn("Dropping {} unflushed exchange rate ticks", sealed.removeFirst().size);
+        }
+    }
+
+    private void requeue(List<TickSegment> segments) {
+        synchronized (lock) {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                sealed.addFirst(segments.get(i));
+            }
+            while (sealed.size() > MAX_SEALED_SEGMENTS) {
+                log.warn("Dropping {} unflushed exchange rate ticks", sealed.removeFirst().size);
+            }
+        }
+    }
+
+    // Must be called while holding lock
+    private CandleSeries[] seriesFor(int pairId) {
+        CandleSeries[][] current = candles;
+        if (pairId < current.length && current[pairId] != null) {
+            return current[pairId];
+        }
+        CandleSeries[] series = newSeries();
+        CandleSeries[][] next = Arrays.copyOf(current, Math.max(current.length, pairId + 1));
+        next[pairId] = series;
+        candles = next;
+        return series;
+    }
+
+    private static CandleSeries[] newSeries() {
+        CandleSeries[] series = new CandleSeries[INTERVALS.length];
+        for (CandleInterval interval : INTERVALS) {
+            series[interval.ordinal()] = new CandleSeries(interval);
+        }
+        return series;
+    }
+
+    /**
+     * Columnar block of ticks: entry {@code i} is pair {@code pairIds[i]} at {@code rates[i]} at {@code times[i]}.
+     */
+    private static final class TickSegment {
+
+        private final int[] pairIds = new int[SEGMENT_SIZE];
+        private final long[] times = new long[SEGMENT_SIZE];
+        private final long[] rates = new long[SEGMENT_SIZE];
+        private int size;
+
+        void append(int pairId, long time, long rate) {
+            pairIds[size] = pairId;
+            times[size] = time;
+            rates[size] = rate;
+            size++;
+        }
+
+        boolean isFull() {
+            return size == SEGMENT_SIZE;
+        }
+    }
+
+    /**
+     * Ring buffer of the most recent candles of one pair at one interval, in parallel primitive arrays.
+     */
+    private static final class CandleSeries {
+
+        private final CandleInterval interval;
+        private final long[] openTimes;
+        private final long[] opens;
+        private final long[] highs;
+        private final long[] lows;
+        private final long[] closes;
+        private final int[] ticks;
+        private int head = -1; // index of the latest candle
+        private int count;
+        private long lastTickTime = Long.MIN_VALUE;
+
+        CandleSeries(CandleInterval interval) {
+            int capacity = interval.getCapacity();
+            this.interval = interval;
+            this.openTimes = new long[capacity];
+            this.opens = new long[capacity];
+            this.highs = new long[capacity];
+            this.lows = new long[capacity];
+            this.closes = new long[capacity];
+            this.ticks = new int[capacity];
+        }
+
+        synchronized void update(long time, long rate) {
+            // Out-of-order ticks would corrupt open/close
+            if (time < lastTickTime) {
+                return;
+            }
+            lastTickTime = time;
+            long openTime = time - Math.floorMod(time, interval.getWidthMillis());
+
+            if (count > 0 && openTimes[head] == openTime) {
+                highs[head] = Math.max(highs[head], rate);
+                lows[head] = Math.min(lows[head], rate);
+                closes[head] = rate;
+                ticks[head]++;
+                return;
+            }
+            push(openTime, rate, rate, rate, rate, 1);
+        }
+
+        // Adds the candles of a series holding only later ticks, merging the candle both have
+        synchronized void append(CandleSeries newer) {
+            synchronized (newer) {
+                for (int back = newer.count - 1; back >= 0; back--) {
+                    int i = Math.floorMod(newer.head - back, newer.openTimes.length);
+                    if (count > 0 && openTimes[head] == newer.openTimes[i]) {
+                        highs[head] = Math.max(highs[head], newer.highs[i]);
+                        lows[head] = Math.min(lows[head], newer.lows[i]);
+                        closes[head] = newer.closes[i];
+                        ticks[head] += newer.ticks[i];
+                    } else {
+                        push(newer.openTimes[i], newer.opens[i], newer.highs[i], newer.lows[i], newer.closes[i], newer.ticks[i]);
+                    }
+                }
+                lastTickTime = Math.max(lastTickTime, newer.lastTickTime);
+            }
+        }
+
+        private void push(long openTime, long open, long high, long low, long close, int tickCount) {
+            head = (head + 1) % openTimes.length;
+            count = Math.min(count + 1, openTimes.length);
+            openTimes[head] = openTime;
+            opens[head] = open;
+            highs[head] = high;
+            lows[head] = low;
+            closes[head] = close;
+            ticks[head] = tickCount;
+        }
+
+        synchronized List<ExchangeRateCandleDto> latest(int limit, String fromCurrency, String toCurrency) {
+            int n = Math.min(Math.max(limit, 0), count);
+            List<ExchangeRateCandleDto> result = new ArrayList<>(n);
+            for (int back = n - 1; back >= 0; back--) {
+                int i = Math.floorMod(head - back, openTimes.length);
+                result.add(ExchangeRateCandleDto.builder()
+                        .fromCurrency(fromCurrency)
+                        .toCurrency(toCurrency)
+                        .interval(interval)
+                        .openTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(openTimes[i]), ZoneId.systemDefault()))
+                        .open(opens[i])
+                        .high(highs[i])
+                        .low(lows[i])
+                        .close(closes[i])
+                        .ticks(ticks[i])
+                        .build());
+            }
+            return result;
+        }
+    }
+}
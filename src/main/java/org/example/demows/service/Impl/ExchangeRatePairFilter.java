@@ -0,0 +1,74 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.ExchangeRateDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Currency-pair filter parsed from a per-pair destination suffix or a snapshot request,
+ * e.g. {@code USD-EUR}, {@code USD-*}, {@code *-JPY}, a basket {@code USD-EUR,GBP-*}, or {@code *} for all pairs.
+ */
+final class ExchangeRatePairFilter implements Predicate<ExchangeRateDto> {
+
+    private static final String ANY = "*";
+    private static final ExchangeRatePairFilter ALL = new ExchangeRatePairFilter(List.of(new PairPattern(ANY, ANY)));
+
+    private final List<PairPattern> patterns;
+
+    private ExchangeRatePairFilter(List<PairPattern> patterns) {
+        this.patterns = patterns;
+    }
+
+    static ExchangeRatePairFilter all() {
+        return ALL;
+    }
+
+    boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Parses a pair spec; a blank spec matches every pair, malformed tokens match nothing.
+     */
+    static ExchangeRatePairFilter parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return ALL;
+        }
+        List<PairPattern> patterns = new ArrayList<>();
+        for (String token : spec.split(",")) {
+            String pair = token.trim().toUpperCase(Locale.ROOT);
+            if (pair.equals(ANY) || pair.equals("**")) {
+                return ALL;
+            }
+            int dash = pair.indexOf('-');
+            if (dash > 0 && dash < pair.length() - 1) {
+                patterns.add(new PairPattern(pair.substring(0, dash), pair.substring(dash + 1)));
+            }
+        }
+        return new ExchangeRatePairFilter(patterns);
+    }
+
+    @Override
+    public boolean test(ExchangeRateDto rate) {
+        return matches(rate.getFromCurrency(), rate.getToCurrency());
+    }
+
+    boolean matches(String fromCurrency, String toCurrency) {
+        for (PairPattern pattern : patterns) {
+            if (pattern.matches(fromCurrency, toCurrency)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record PairPattern(String from, String to) {
+
+        boolean matches(String fromCurrency, String toCurrency) {
+            return (ANY.equals(from) || from.equals(fromCurrency)) && (ANY.equals(to) || to.equals(toCurrency));
+        }
+    }
+}
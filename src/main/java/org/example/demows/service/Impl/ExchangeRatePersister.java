@@ -0,0 +1,140 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ExchangeRateDto;
+import org.example.demows.dto.FixedPointRate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tick-persistence stage: writes rate book changes to the database on a single background thread,
+ * so neither the scheduler tick nor REST updates wait for Postgres.
+ * <p>
+ * Changes are coalesced per rate id until the writer gets to them and then written as one JDBC batch
+ * of plain UPDATEs, i.e. one round trip and one short transaction per flush instead of a JPA merge per row.
+ * A batch that fails transiently is retried after {@value #RETRY_DELAY_MS} ms; one the database rejects is
+ * written row by row, so a rejected rate is logged and dropped without holding up the others.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExchangeRatePersister implements DisposableBean {
+
+    private static final String UPDATE_RATE_SQL = "UPDATE exchange_rates SET rate = ?, last_updated = ? WHERE id = ?";
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("exchange-rate-persister-"));
+
+    // rate id -> latest unwritten rate
+    private final ConcurrentMap<Long, ExchangeRateDto> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * Queues changes for the next flush. Callers must pass changes in the order they were applied.
+     */
+    public void persist(List<ExchangeRateDto> changed) {
+        changed.forEach(rate -> pending.put(rate.getId(), rate));
+        scheduleFlush(0);
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.warn("Exchange rate persister is shut down, dropping {} rate updates", pending.size());
+            }
+        }
+    }
+
+    private void flush() {
+        // Cleared before draining: anything queued from here on schedules another flush
+        flushScheduled.set(false);
+
+        List<ExchangeRateDto> batch = new ArrayList<>(pending.size());
+        for (Long id : pending.keySet()) {
+            ExchangeRateDto rate = pending.remove(id);
+            if (rate != null) {
+                batch.add(rate);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_RATE_SQL, batch, batch.size(), (ps, rate) -> {
+                // Database boundary: fixed-point back to the NUMERIC(10, 6) column
+                ps.setBigDecimal(1, FixedPointRate.toBigDecimal(rate.getRate()));
+                ps.setTimestamp(2, Timestamp.valueOf(rate.getLastUpdated()));
+                ps.setLong(3, rate.getId());
+            });
+            log.debug("Persisted {} exchange rates in one batch", batch.size());
+        } catch (DataAccessException e) {
+            if (DataAccessFailures.isTransient(e)) {
+                log.error("Error persisting {} exchange rate updates, retrying in {} ms", batch.size(), RETRY_DELAY_MS, e);
+                retry(batch);
+                return;
+            }
+            log.warn("Exchange rate batch of {} rejected ({}), writing the rates one by one", batch.size(), e.getMessage());
+            writeApart(batch);
+        }
+    }
+
+    private void writeApart(List<ExchangeRateDto> batch) {
+        List<ExchangeRateDto> failed = new ArrayList<>();
+        for (ExchangeRateDto rate : batch) {
+            try {
+                jdbcTemplate.update(UPDATE_RATE_SQL, FixedPointRate.toBigDecimal(rate.getRate()),
+                        Timestamp.valueOf(rate.getLastUpdated()), rate.getId());
+            } catch (DataAccessException e) {
+                if (DataAccessFailures.isTransient(e)) {
+                    failed.add(rate);
+                } else {
+                    log.error("Exchange rate {} {}-{} = {} rejected by the database, not persisted", rate.getId(),
+                            rate.getFromCurrency(), rate.getToCurrency(), FixedPointRate.toBigDecimal(rate.getRate()), e);
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.error("Error persisting {} exchange rate updates, retrying in {} ms", failed.size(), RETRY_DELAY_MS);
+            retry(failed);
+        }
+    }
+
+    private void retry(List<ExchangeRateDto> failed) {
+        // Keep newer values that arrived in the meantime
+        failed.forEach(rate -> pending.putIfAbsent(rate.getId(), rate));
+        scheduleFlush(RETRY_DELAY_MS);
+    }
+
+    /**
+     * Flushes queued writes before the datasource goes away.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Exchange rate persister did not drain in time");
+            executor.shutdownNow();
+        }
+        // Last flush for anything queued while the executor was shutting down
+        flush();
+    }
+}
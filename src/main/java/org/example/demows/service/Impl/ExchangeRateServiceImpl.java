@@ -1,82 +1,141 @@
 package org.example.demows.service.Impl;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
+import org.example.demows.dto.CandleInterval;
+import org.example.demows.dto.ExchangeRateCandleDto;
 import org.example.demows.dto.ExchangeRateDto;
+import org.example.demows.dto.ExchangeRateTickDto;
+import org.example.demows.dto.FixedPointRate;
 import org.example.demows.dto.WebSocketMessage;
-import org.example.demows.entity.ExchangeRate;
+import org.example.demows.dto.WebSocketMessageType;
 import org.example.demows.exception.ResourceNotFoundException;
-import org.example.demows.repository.ExchangeRateRepository;
 import org.example.demows.service.ExchangeRateService;
+import org.example.demows.websocket.StompBroadcaster;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-@Transactional
 public class ExchangeRateServiceImpl implements ExchangeRateService {
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateBook exchangeRateBook;
+    private final ExchangeRatePersister exchangeRatePersister;
+    private final ExchangeRateHistory exchangeRateHistory;
     private final KafkaTemplate<String, String> kafkaTemplate;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final StompBroadcaster stompBroadcaster;
     private final ObjectMapper objectMapper;
 
     private static final String EXCHANGE_RATES_TOPIC = "exchange-rates";
     private static final String EXCHANGE_RATES_WS_TOPIC = "/topic/exchange-rates";
+    // Per-pair, wildcard and basket destinations, e.g. /topic/exchange-rates/USD-EUR, /topic/exchange-rates/USD-*
+    private static final String EXCHANGE_RATES_PAIR_PREFIX = EXCHANGE_RATES_WS_TOPIC + "/";
     private final Random random = new Random();
 
+    // Serializes book updates with their publication, so deltas go out in sequence order
+    private final Object streamLock = new Object();
+    // Per-pair destination state, guarded by streamLock and pruned to the currently subscribed destinations
+    private Map<String, ExchangeRatePairFilter> pairFilters = new HashMap<>();
+    private Map<String, Long> lastSequenceByDestination = new HashMap<>();
+
     @Override
     public List<ExchangeRateDto> getAllExchangeRates() {
         log.info("Fetching all exchange rates");
-        return exchangeRateRepository.findAll().stream()
-                .map(this::mapToDto)
-                .toList();
+        return exchangeRateBook.current().rates();
     }
 
     @Override
     public ExchangeRateDto getExchangeRate(String fromCurrency, String toCurrency) {
         log.info("Fetching exchange rate from {} to {}", fromCurrency, toCurrency);
-        ExchangeRate exchangeRate = exchangeRateRepository.findExchangeRate(fromCurrency, toCurrency)
-                .orElseThrow(() -> new ResourceNotFoundException("ExchangeRate",
-                        String.format("fromCurrency=%s, toCurrency=%s", fromCurrency, toCurrency),
-                        String.format("%s-%s", fromCurrency, toCurrency)));
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        int pairId = snapshot.pairId(fromCurrency, toCurrency);
+        if (pairId >= 0) {
+            return snapshot.toDto(pairId);
+        }
+        // Not quoted: derive it from the quoted pairs if they connect both currencies
+        ExchangeRateDto implied = snapshot.impliedRate(fromCurrency, toCurrency);
+        if (implied == null) {
+            throw notFound(fromCurrency, toCurrency);
+        }
+        return implied;
+    }
+
+    @Override
+    public ExchangeRateTickDto getExchangeRateSnapshot(String pairs) {
+        ExchangeRatePairFilter filter = ExchangeRatePairFilter.parse(pairs);
+        // Sequence and rates come from the same immutable snapshot, no lock needed
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        List<ExchangeRateDto> rates = new ArrayList<>(snapshot.rates().stream().filter(filter).toList());
+        // Implied pairs are only included when asked for, the full snapshot stays limited to quoted pairs
+        if (!filter.isAll()) {
+            rates.addAll(snapshot.impliedRates(filter::matches));
+        }
+        return ExchangeRateTickDto.builder()
+                .fromSequence(0)
+                .sequence(snapshot.sequence())
+                .rates(rates)
+                .build();
+    }
 
-        return mapToDto(exchangeRate);
+    @Override
+    public List<ExchangeRateCandleDto> getCandles(String fromCurrency, String toCurrency, String interval, int limit) {
+        log.info("Fetching {} candles from {} to {} [limit: {}]", interval, fromCurrency, toCurrency, limit);
+        CandleInterval candleInterval = CandleInterval.fromCode(interval);
+        int pairId = pairIdOf(exchangeRateBook.current(), fromCurrency, toCurrency);
+        return exchangeRateHistory.getCandles(pairId, candleInterval, Math.min(limit, candleInterval.getCapacity()));
     }
 
     @Override
     public ExchangeRateDto updateExchangeRate(String fromCurrency, String toCurrency, BigDecimal newRate) {
         log.info("Updating exchange rate from {} to {} with new rate: {}", fromCurrency, toCurrency, newRate);
-        ExchangeRate exchangeRate = exchangeRateRepository.findExchangeRate(fromCurrency, toCurrency)
-                .orElseThrow(() -> new ResourceNotFoundException("ExchangeRate",
-                        String.format("fromCurrency=%s, toCurrency=%s", fromCurrency, toCurrency),
-                        String.format("%s-%s", fromCurrency, toCurrency)));
+        int pairId = pairIdOf(exchangeRateBook.current(), fromCurrency, toCurrency);
 
-        exchangeRate.setRate(newRate);
-        exchangeRate.setLastUpdated(LocalDateTime.now());
+        // REST boundary: the only BigDecimal -> fixed-point conversion on the write side. The book is authoritative
+        // and persisted asynchronously, so anything the rate column would reject must be rejected here
+        if (newRate.compareTo(FixedPointRate.toBigDecimal(FixedPointRate.MAX)) > 0) {
+            throw rateOutOfRange();
+        }
+        long rate = FixedPointRate.fromBigDecimal(newRate);
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Exchange rate must be positive");
+        }
+        if (rate > FixedPointRate.MAX) {
+            throw rateOutOfRange();
+        }
+
+        // Send to Kafka and WebSocket as a single-pair delta
+        return publishExchangeRateDelta(new int[]{pairId}, new long[]{rate}, 1).get(0);
+    }
 
-        ExchangeRate updatedRate = exchangeRateRepository.save(exchangeRate);
-        ExchangeRateDto dto = mapToDto(updatedRate);
+    private int pairIdOf(ExchangeRateBook.Snapshot snapshot, String fromCurrency, String toCurrency) {
+        int pairId = snapshot.pairId(fromCurrency, toCurrency);
+        if (pairId < 0) {
+            throw notFound(fromCurrency, toCurrency);
+        }
+        return pairId;
+    }
 
-        // Send to Kafka for real-time updates
-        // publishExchangeRateUpdate(dto);
-        publishExchangeRateUpdate(dto);
+    private IllegalArgumentException rateOutOfRange() {
+        return new IllegalArgumentException("Exchange rate must not exceed " + FixedPointRate.toString(FixedPointRate.MAX));
+    }
 
-        return dto;
+    private ResourceNotFoundException notFound(String fromCurrency, String toCurrency) {
+        return new ResourceNotFoundException("ExchangeRate",
+                String.format("fromCurrency=%s, toCurrency=%s", fromCurrency, toCurrency),
+                String.format("%s-%s", fromCurrency, toCurrency));
     }
 
     /**
@@ -87,86 +146,153 @@ public class ExchangeRateServiceImpl implements ExchangeRateService {
     public void simulateExchangeRateUpdates() {
         log.info("Simulating exchange rate updates");
 
-        List<ExchangeRate> allRates = exchangeRateRepository.findAll();
-        List<ExchangeRateDto> updatedDtos = new ArrayList<>();
+        // Fixed-point rates in primitive arrays indexed by pair id, no per-pair objects until publication
+        ExchangeRateBook.Snapshot snapshot = exchangeRateBook.current();
+        int[] changedIds = new int[snapshot.size()];
+        long[] changedRates = new long[snapshot.size()];
+        int changed = 0;
 
-        for (ExchangeRate rate : allRates) {
-            BigDecimal currentRate = rate.getRate();
+        for (int pairId = 0; pairId < snapshot.size(); pairId++) {
+            long currentRate = snapshot.rate(pairId);
 
             // Random change between -0.03 and +0.03
-            BigDecimal changeAmount = BigDecimal.valueOf(random.nextDouble() * 0.06 - 0.03)
-                    .setScale(2, RoundingMode.HALF_UP);
+            long changeAmount = Math.round((random.nextDouble() * 0.06 - 0.03) * 100) * FixedPointRate.CENT;
 
-            BigDecimal newRate = currentRate.add(changeAmount)
-                    .setScale(2, RoundingMode.HALF_UP);
+            long newRate = FixedPointRate.round(currentRate, FixedPointRate.CENT) + changeAmount;
 
             // Ensure rate stays positive
-            if (newRate.compareTo(BigDecimal.ZERO) <= 0) {
-                newRate = BigDecimal.valueOf(0.01);
+            if (newRate <= 0) {
+                newRate = FixedPointRate.CENT;
             }
 
-            rate.setRate(newRate);
-            rate.setLastUpdated(LocalDateTime.now());
+            // Skip pairs whose rounded rate did not move
+            if (newRate == currentRate) {
+                continue;
+            }
 
-            ExchangeRate updatedRate = exchangeRateRepository.save(rate);
-            updatedDtos.add(mapToDto(updatedRate));
+            changedIds[changed] = pairId;
+            changedRates[changed] = newRate;
+            changed++;
         }
 
-        // Wrap the whole batch in one message
-        publishExchangeRateBatch(updatedDtos);
+        // Wrap the changed pairs in one sequenced delta
+        if (changed > 0) {
+            publishExchangeRateDelta(changedIds, changedRates, changed);
+        }
     }
 
-    private void publishExchangeRateBatch(List<ExchangeRateDto> dtos) {
-        try {
-            WebSocketMessage<List<ExchangeRateDto>> message = WebSocketMessage.<List<ExchangeRateDto>>builder()
-                    .type("EXCHANGE_RATE_UPDATE_BATCH")
-                    .data(dtos)
-                    .timestamp(LocalDateTime.now().toString())
-                    .build();
-
-            String messageJson = objectMapper.writeValueAsString(message);
+    /**
+     * Applies the changes to the rate book as the next sequence number, publishes the delta and hands the
+     * changes to the persister. Runs under the stream lock so deltas are published in sequence order; only the
+     * Kafka send happens after it, as it may block for {@code max.block.ms} while the broker is unreachable.
+     *
+     * @return the changed rates as published
+     */
+    private List<ExchangeRateDto> publishExchangeRateDelta(int[] pairIds, long[] rates, int count) {
+        List<ExchangeRateDto> changedDtos = new ArrayList<>(count);
+        String messageJson = null;
+        synchronized (streamLock) {
+            ExchangeRateBook.Snapshot snapshot = exchangeRateBook.apply(pairIds, rates, count, LocalDateTime.now());
+            long sequence = snapshot.sequence();
+            exchangeRateHistory.record(pairIds, rates, count, System.currentTimeMillis());
+
+            for (int i = 0; i < count; i++) {
+                changedDtos.add(snapshot.toDto(pairIds[i]));
+            }
 
-            // Send to Kafka
-            kafkaTemplate.send(EXCHANGE_RATES_TOPIC, messageJson);
+            ExchangeRateTickDto tick = ExchangeRateTickDto.builder()
+                    .fromSequence(sequence)
+                    .sequence(sequence)
+                    .rates(changedDtos)
+                    .build();
 
-            // Send to WebSocket subscribers
-            messagingTemplate.convertAndSend(EXCHANGE_RATES_WS_TOPIC, message);
+            try {
+                WebSocketMessage<ExchangeRateTickDto> message = WebSocketMessage.<ExchangeRateTickDto>builder()
+                        .type(WebSocketMessageType.EXCHANGE_RATE_DELTA.name())
+                        .data(tick)
+                        .timestamp(LocalDateTime.now().toString())
+                        .build();
 
-            log.debug("Published exchange rate batch update: {}", messageJson);
-        } catch (JsonProcessingException e) {
-            log.error("Error serializing exchange rate batch update", e);
-        }
-    }
+                messageJson = objectMapper.writeValueAsString(message);
 
-    private void publishExchangeRateUpdate(ExchangeRateDto exchangeRateDto) {
-        try {
-            WebSocketMessage<ExchangeRateDto> message = WebSocketMessage.<ExchangeRateDto>builder()
-                    .type("EXCHANGE_RATE_UPDATE")
-                    .data(exchangeRateDto)
-                    .timestamp(LocalDateTime.now().toString())
-                    .build();
+                // Send to WebSocket subscribers, reusing the JSON built for Kafka. This is the only
+                // WebSocket path of the delta. Slow sessions get consecutive deltas conflated into one.
+                stompBroadcaster.broadcastConflated(EXCHANGE_RATES_WS_TOPIC, message, messageJson);
 
-            String messageJson = objectMapper.writeValueAsString(message);
+                log.debug("Published exchange rate delta: {}", messageJson);
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing exchange rate delta", e);
+            }
 
-            // Send to Kafka
-            kafkaTemplate.send(EXCHANGE_RATES_TOPIC, messageJson);
+            publishPairDeltas(changedDtos, snapshot);
 
-            // Send to WebSocket subscribers
-            messagingTemplate.convertAndSend(EXCHANGE_RATES_WS_TOPIC, message);
+            // The database trails the book: writes are only queued here, in sequence order
+            exchangeRatePersister.persist(changedDtos);
+        }
 
-            log.debug("Published exchange rate update: {}", messageJson);
-        } catch (JsonProcessingException e) {
-            log.error("Error serializing exchange rate update", e);
+        // Outside the lock: concurrent publishers may reach Kafka out of order. The topic only feeds
+        // downstream consumers, WebSocket clients get each instance's deltas straight from its own book
+        if (messageJson != null) {
+            try {
+                kafkaTemplate.send(EXCHANGE_RATES_TOPIC, messageJson);
+            } catch (RuntimeException e) {
+                log.error("Error sending exchange rate delta to Kafka", e);
+            }
         }
+        return changedDtos;
     }
 
-    private ExchangeRateDto mapToDto(ExchangeRate exchangeRate) {
-        return ExchangeRateDto.builder()
-                .id(exchangeRate.getId())
-                .fromCurrency(exchangeRate.getFromCurrency())
-                .toCurrency(exchangeRate.getToCurrency())
-                .rate(exchangeRate.getRate())
-                .lastUpdated(exchangeRate.getLastUpdated())
-                .build();
+    /**
+     * Routes the changed pairs to per-pair destinations, so each session only receives the pairs it asked for.
+     * Every frame is a delta since the previous frame on the same destination, so filtered streams stay
+     * gap-free even though most ticks do not touch their pairs. Every destination except the all-pairs one
+     * (a pair, a wildcard such as {@code USD-*}, or a basket) also gets the matching implied (cross) rates the
+     * tick changed, like the snapshot for the same filter. Must be called while holding streamLock.
+     */
+    private void publishPairDeltas(List<ExchangeRateDto> changedDtos, ExchangeRateBook.Snapshot snapshot) {
+        long sequence = snapshot.sequence();
+        // Built on first use only, most ticks have no filtered destination
+        List<List<ExchangeRateDto>> changedImplied = new ArrayList<>(1);
+        Map<String, ExchangeRatePairFilter> filters = new HashMap<>();
+        Map<String, Long> lastSequences = new HashMap<>();
+        String timestamp = LocalDateTime.now().toString();
+
+        stompBroadcaster.<ExchangeRateTickDto>broadcastConflatedToGroup(EXCHANGE_RATES_PAIR_PREFIX, destination -> {
+            ExchangeRatePairFilter filter = pairFilters.get(destination);
+            if (filter == null) {
+                filter = ExchangeRatePairFilter.parse(destination.substring(EXCHANGE_RATES_PAIR_PREFIX.length()));
+            }
+            filters.put(destination, filter);
+
+            Long lastSequence = lastSequenceByDestination.get(destination);
+            List<ExchangeRateDto> matching = new ArrayList<>(changedDtos.stream().filter(filter).toList());
+            if (!filter.isAll()) {
+                if (changedImplied.isEmpty()) {
+                    changedImplied.add(snapshot.changedImpliedRates());
+                }
+                changedImplied.get(0).stream().filter(filter).forEach(matching::add);
+            }
+            if (matching.isEmpty()) {
+                if (lastSequence != null) {
+                    lastSequences.put(destination, lastSequence);
+                }
+                return null;
+            }
+            lastSequences.put(destination, sequence);
+
+            return WebSocketMessage.<ExchangeRateTickDto>builder()
+                    .type(WebSocketMessageType.EXCHANGE_RATE_DELTA.name())
+                    .data(ExchangeRateTickDto.builder()
+                            // First frame on a destination: nothing was missed since it was subscribed
+                            .fromSequence(lastSequence != null ? lastSequence + 1 : 1)
+                            .sequence(sequence)
+                            .rates(matching)
+                            .build())
+                    .timestamp(timestamp)
+                    .build();
+        });
+
+        pairFilters = filters;
+        lastSequenceByDestination = lastSequences;
     }
 }
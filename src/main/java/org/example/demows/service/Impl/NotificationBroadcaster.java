@@ -0,0 +1,242 @@
+package org.example.demows.service.Impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.BroadcastNotificationRequest;
+import org.example.demows.dto.NotificationBatchDto;
+import org.example.demows.dto.NotificationBroadcastDto;
+import org.example.demows.dto.WebSocketMessage;
+import org.example.demows.dto.WebSocketMessageType;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one notification to many users without a round trip per user.
+ * <p>
+ * Recipients are read from {@code users} with a keyset cursor on the id, {@code notification.broadcast.batch-size} at a
+ * time. Each batch is one transaction: a single multi-row INSERT of the notifications and a single outbox row
+ * holding the whole batch ({@code NOTIFICATION_BATCH}), so it becomes one Kafka record that the notifications
+ * consumer expands into paced per-user frames. Broadcasts run one at a time on a background thread; their
+ * progress is kept in memory for the last {@link #MAX_TRACKED} of them. Only the users listed in
+ * {@code notification.broadcast.admins} (none by default) may start them.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationBroadcaster implements DisposableBean {
+
+    public static final String OUTBOX_KEY_PREFIX = "broadcast-";
+    private static final int MAX_TRACKED = 100;
+    private static final String INSERT_NOTIFICATIONS_SQL = "INSERT INTO notifications " +
+            "(user_id, username, title, message, type, priority, is_read, is_active, digest_pending, created_at, seq) " +
+            "SELECT r.user_id, r.username, ?, ?, ?, ?, false, true, false, ?, r.seq " +
+            "FROM unnest(?::bigint[], ?::varchar[], ?::bigint[]) AS r(user_id, username, seq) " +
+            "RETURNING id, username, seq";
+    private static final String INSERT_OUTBOX_SQL = "INSERT INTO notification_outbox (username, payload, created_at) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final NotificationSequencer notificationSequencer;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("notification-broadcaster-"));
+
+    @Value("${notification.broadcast.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${notification.broadcast.admins:}")
+    private Set<String> admins;
+
+    // broadcastId -> progress, oldest first; guarded by itself
+    private final Map<String, NotificationBroadcastDto> broadcasts = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NotificationBroadcastDto> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    /**
+     * Queues a broadcast and returns its initial progress.
+     */
+    public NotificationBroadcastDto start(BroadcastNotificationRequest request) {
+        if (request.getTarget() == BroadcastNotificationRequest.Target.USERS
+                && (request.getUsernames() == null || request.getUsernames().isEmpty())) {
+            throw new IllegalArgumentException("A USERS broadcast needs usernames");
+        }
+        String broadcastId = UUID.randomUUID().toString();
+        update(NotificationBroadcastDto.builder()
+                .broadcastId(broadcastId)
+                .target(request.getTarget().name())
+                .status("RUNNING")
+                .startedAt(LocalDateTime.now().toString())
+                .build());
+        try {
+            executor.execute(() -> run(broadcastId, request));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Notification broadcaster is shutting down", e);
+        }
+        return get(broadcastId);
+    }
+
+    public boolean isAdmin(String username) {
+        return admins.contains(username);
+    }
+
+    public NotificationBroadcastDto get(String broadcastId) {
+        synchronized (broadcasts) {
+            NotificationBroadcastDto progress = broadcasts.get(broadcastId);
+            return progress != null ? progress.toBuilder().build() : null;
+        }
+    }
+
+    private void run(String broadcastId, BroadcastNotificationRequest request) {
+        long recipients = 0;
+        long batches = 0;
+        long afterId = 0;
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            while (true) {
+                List<Recipient> batch = nextRecipients(request, afterId);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                transactionTemplate.executeWithoutResult(status -> send(broadcastId, request, batch));
+                afterId = batch.get(batch.size() - 1).userId();
+                recipients += batch.size();
+                batches++;
+                progress(broadcastId, "RUNNING", recipients, batches, null);
+            }
+            progress(broadcastId, "COMPLETED", recipients, batches, null);
+            log.info("Notification broadcast {} sent to {} users in {} batches", broadcastId, recipients, batches);
+        } catch (RuntimeException e) {
+            // Batches already committed stay delivered; the rest is not sent
+            progress(broadcastId, "FAILED", recipients, batches, e.getMessage());
+            log.error("Notification broadcast {} failed after {} users", broadcastId, recipients, e);
+        }
+    }
+
+    // Next active recipients after the cursor, by id
+    private List<Recipient> nextRecipients(BroadcastNotificationRequest request, long afterId) {
+        StringBuilder sql = new StringBuilder("SELECT id, username FROM users WHERE is_active = true AND id > ?");
+        List<Object> params = new ArrayList<>(List.of(afterId));
+        switch (request.getTarget()) {
+            case USERS -> sql.append(" AND username = ANY(?)");
+            case SEGMENT -> {
+                if (request.getRegisteredAfter() != null) {
+                    sql.append(" AND created_at >= ?");
+                    params.add(Timestamp.valueOf(request.getRegisteredAfter()));
+                }
+                if (request.getRegisteredBefore() != null) {
+                    sql.append(" AND created_at < ?");
+                    params.add(Timestamp.valueOf(request.getRegisteredBefore()));
+                }
+            }
+            case ALL -> {
+            }
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        params.add(batchSize);
+
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            int index = 1;
+            ps.setObject(index++, params.get(0));
+            if (request.getTarget() == BroadcastNotificationRequest.Target.USERS) {
+                ps.setArray(index++, connection.createArrayOf("varchar", request.getUsernames().toArray()));
+            }
+            for (Object param : params.subList(1, params.size())) {
+                ps.setObject(index++, param);
+            }
+            return ps;
+        }, (rs, rowNum) -> new Recipient(rs.getLong("id"), rs.getString("username")));
+    }
+
+    private void send(String broadcastId, BroadcastNotificationRequest request, List<Recipient> batch) {
+        LocalDateTime createdAt = LocalDateTime.now();
+        Map<Long, Long> seqs = notificationSequencer.next(batch.stream().map(Recipient::userId).toList());
+        List<NotificationBatchDto.Recipient> inserted = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_NOTIFICATIONS_SQL);
+            ps.setString(1, request.getTitle());
+            ps.setString(2, request.getMessage());
+            ps.setString(3, request.getType());
+            ps.setString(4, request.getPriority() != null ? request.getPriority() : "NORMAL");
+            ps.setTimestamp(5, Timestamp.valueOf(createdAt));
+            ps.setArray(6, connection.createArrayOf("bigint", batch.stream().map(Recipient::userId).toArray()));
+            ps.setArray(7, connection.createArrayOf("varchar", batch.stream().map(Recipient::username).toArray()));
+            ps.setArray(8, connection.createArrayOf("bigint", batch.stream().map(recipient -> seqs.get(recipient.userId())).toArray()));
+            return ps;
+        }, (rs, rowNum) -> new NotificationBatchDto.Recipient(rs.getString("username"), rs.getLong("id"), rs.getLong("seq")));
+
+        WebSocketMessage<NotificationBatchDto> message = WebSocketMessage.<NotificationBatchDto>builder()
+                .type(WebSocketMessageType.NOTIFICATION_BATCH.name())
+                .data(NotificationBatchDto.builder()
+                        .broadcastId(broadcastId)
+                        .title(request.getTitle())
+                        .message(request.getMessage())
+                        .type(request.getType())
+                        .priority(request.getPriority() != null ? request.getPriority() : "NORMAL")
+                        .createdAt(createdAt.toString())
+                        .recipients(inserted)
+                        .build())
+                .timestamp(createdAt.toString())
+                .build();
+        try {
+            jdbcTemplate.update(INSERT_OUTBOX_SQL, OUTBOX_KEY_PREFIX + broadcastId,
+                    objectMapper.writeValueAsString(message), Timestamp.valueOf(createdAt));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize notification batch", e);
+        }
+    }
+
+    private void progress(String broadcastId, String status, long recipients, long batches, String error) {
+        NotificationBroadcastDto current = get(broadcastId);
+        if (current == null) {
+            return;
+        }
+        current.setStatus(status);
+        current.setRecipients(recipients);
+        current.setBatches(batches);
+        current.setError(error);
+        if (!"RUNNING".equals(status)) {
+            current.setFinishedAt(LocalDateTime.now().toString());
+        }
+        update(current);
+    }
+
+    private void update(NotificationBroadcastDto progress) {
+        synchronized (broadcasts) {
+            broadcasts.put(progress.getBroadcastId(), progress);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Notification broadcaster did not stop in time");
+        }
+    }
+
+    private record Recipient(long userId, String username) {
+    }
+}
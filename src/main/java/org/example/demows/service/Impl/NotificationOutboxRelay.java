@@ -0,0 +1,121 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Relays {@code notification_outbox} rows to the {@code notifications} topic, keyed by recipient.
+ * <p>
+ * Each batch is read with {@code FOR UPDATE SKIP LOCKED} (instances drain disjoint batches), published, and
+ * deleted once Kafka acknowledged every record of it, all in one transaction. A failed batch rolls back and is
+ * published again with the next run, so delivery is at least once; clients replace notifications by id.
+ * <p>
+ * Runs on its own thread rather than as a {@code @Scheduled} job: it polls every 100 ms and may wait up to
+ * 10 s for Kafka, which would hold up the jobs sharing the scheduler.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationOutboxRelay implements InitializingBean, DisposableBean {
+
+    public static final String NOTIFICATIONS_TOPIC = "notifications";
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+    private static final String SELECT_BATCH_SQL = "SELECT id, username, payload FROM notification_outbox " +
+            "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String DELETE_SQL = "DELETE FROM notification_outbox WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("notification-outbox-relay-"));
+
+    @Value("${notification.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${notification.outbox.poll-interval-ms:100}")
+    private long pollIntervalMs;
+
+    @Override
+    public void afterPropertiesSet() {
+        executor.scheduleWithFixedDelay(this::relay, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drains the outbox until a batch comes back short.
+     */
+    public void relay() {
+        int relayed;
+        do {
+            relayed = relayBatch();
+        } while (relayed == batchSize);
+    }
+
+    private int relayBatch() {
+        try {
+            Integer relayed = new TransactionTemplate(transactionManager).execute(status -> {
+                List<OutboxRecord> batch = jdbcTemplate.query(SELECT_BATCH_SQL, (rs, rowNum) ->
+                        new OutboxRecord(rs.getLong("id"), rs.getString("username"), rs.getString("payload")), batchSize);
+                if (batch.isEmpty()) {
+                    return 0;
+                }
+                publish(batch);
+                jdbcTemplate.batchUpdate(DELETE_SQL, batch, batch.size(), (ps, record) -> ps.setLong(1, record.id()));
+                return batch.size();
+            });
+            if (relayed != null && relayed > 0) {
+                log.debug("Relayed {} notification frames to Kafka", relayed);
+            }
+            return relayed != null ? relayed : 0;
+        } catch (RuntimeException e) {
+            log.error("Error relaying notification outbox, retrying with the next run", e);
+            return 0;
+        }
+    }
+
+    // Returns once Kafka acknowledged every record of the batch
+    private void publish(List<OutboxRecord> batch) {
+        CompletableFuture<?>[] sends = batch.stream()
+                .map(record -> kafkaTemplate.send(NOTIFICATIONS_TOPIC, record.username(), record.payload()))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(sends).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing notification outbox", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Could not publish " + batch.size() + " notification frames", e);
+        }
+    }
+
+    /**
+     * Lets a running batch finish before the datasource and producer go away.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(SEND_TIMEOUT_SECONDS + 5, TimeUnit.SECONDS)) {
+            log.warn("Notification outbox relay did not stop in time");
+            executor.shutdownNow();
+        }
+    }
+
+    private record OutboxRecord(long id, String username, String payload) {
+    }
+}
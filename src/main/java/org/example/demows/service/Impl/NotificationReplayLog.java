@@ -0,0 +1,124 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.NotificationDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Recent notification frames per user by sequence number, so a reconnecting client gets only what it missed
+ * without a query.
+ * <p>
+ * Filled from the {@code notifications} topic on every instance (a reconnect may land anywhere), keeping the
+ * newest {@code notification.replay.entries-per-user} frames of the {@code notification.replay.max-users} most
+ * recently active users. A user's log starts with the first frame this instance saw, and answers a replay only
+ * when it holds every number after the client's: anything else falls back to the database.
+ */
+@Component
+public class NotificationReplayLog {
+
+    private final int capacity;
+    private final Map<String, UserLog> logs; // guarded by itself
+
+    public NotificationReplayLog(@Value("${notification.replay.entries-per-user:100}") int capacity,
+                                 @Value("${notification.replay.max-users:50000}") int maxUsers) {
+        this.capacity = capacity;
+        this.logs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserLog> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Records a delivered frame, starting a log for the user if there is none.
+     */
+    public void append(NotificationDto notification) {
+        if (notification.getSeq() == null) {
+            return;
+        }
+        UserLog log;
+        synchronized (logs) {
+            log = logs.computeIfAbsent(notification.getUsername(), username -> new UserLog(capacity));
+        }
+        log.append(notification);
+    }
+
+    /**
+     * Records a frame only for users that already have a log (broadcasts must not evict the active users' logs).
+     */
+    public void appendIfTracked(NotificationDto notification) {
+        if (notification.getSeq() == null) {
+            return;
+        }
+        UserLog log;
+        synchronized (logs) {
+            log = logs.get(notification.getUsername());
+        }
+        if (log != null) {
+            log.append(notification);
+        }
+    }
+
+    /**
+     * Everything that changed after {@code sinceSeq}, in sequence order with only the latest frame of each
+     * notification, or {@code null} if this log cannot tell.
+     */
+    public List<NotificationDto> replay(String username, long sinceSeq) {
+        UserLog log;
+        synchronized (logs) {
+            log = logs.get(username);
+        }
+        return log != null ? log.replay(sinceSeq) : null;
+    }
+
+    private static final class UserLog {
+
+        private final int capacity;
+        private final TreeMap<Long, NotificationDto> frames = new TreeMap<>();
+        private long firstSeq = Long.MAX_VALUE; // the log is complete from here on (up to its last frame)
+
+        UserLog(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void append(NotificationDto notification) {
+            long seq = notification.getSeq();
+            if (seq < firstSeq) {
+                if (!frames.isEmpty()) {
+                    return; // older than the log: whatever lies between is unknown
+                }
+                firstSeq = seq;
+            }
+            frames.put(seq, notification);
+            while (frames.size() > capacity) {
+                frames.pollFirstEntry();
+                firstSeq = frames.firstKey();
+            }
+        }
+
+        synchronized List<NotificationDto> replay(long sinceSeq) {
+            if (frames.isEmpty() || sinceSeq < firstSeq - 1) {
+                return null;
+            }
+            NavigableMap<Long, NotificationDto> missed = frames.tailMap(sinceSeq, false);
+            // Frames may arrive out of order (broadcasts use other partitions): a gap means unknown
+            if (!missed.isEmpty() && missed.size() != missed.lastKey() - sinceSeq) {
+                return null;
+            }
+            Map<Long, NotificationDto> latestById = new LinkedHashMap<>();
+            missed.values().forEach(notification -> {
+                latestById.remove(notification.getId());
+                latestById.put(notification.getId(), notification);
+            });
+            return new ArrayList<>(latestById.values());
+        }
+    }
+}
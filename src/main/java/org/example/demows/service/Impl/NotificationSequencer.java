@@ -0,0 +1,80 @@
+package org.example.demows.service.Impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out per-user notification sequence numbers. Must be called inside the transaction that writes the
+ * notification change: the user's {@code notification_sequences} row stays locked until it commits, so numbers
+ * become visible in order and a rollback gives its number back.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationSequencer {
+
+    private static final String NEXT_SQL = "INSERT INTO notification_sequences (user_id, last_seq) VALUES (?, 1) " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = notification_sequences.last_seq + 1 RETURNING last_seq";
+    // Rows are locked in user id order, like any other caller of this class
+    private static final String NEXT_BATCH_SQL = "INSERT INTO notification_sequences (user_id, last_seq) " +
+            "SELECT u.user_id, 1 FROM unnest(?::bigint[]) AS u(user_id) ORDER BY u.user_id " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = notification_sequences.last_seq + 1 RETURNING user_id, last_seq";
+    // A no-op update, for the row lock alone
+    private static final String LOCK_SQL = "INSERT INTO notification_sequences (user_id, last_seq) VALUES (?, 0) " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = notification_sequences.last_seq";
+    private static final String TRY_LOCK_SQL = "SELECT user_id FROM notification_sequences WHERE user_id = ANY(?) " +
+            "ORDER BY user_id FOR UPDATE SKIP LOCKED";
+    private static final String CURRENT_SQL = "SELECT COALESCE(MAX(last_seq), 0) FROM notification_sequences WHERE user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long next(long userId) {
+        return jdbcTemplate.queryForObject(NEXT_SQL, Long.class, userId);
+    }
+
+    /**
+     * The next number of each of the (distinct) users, userId -> seq.
+     */
+    public Map<Long, Long> next(List<Long> userIds) {
+        Map<Long, Long> seqs = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(NEXT_BATCH_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        }, rs -> {
+            seqs.put(rs.getLong("user_id"), rs.getLong("last_seq"));
+        });
+        return seqs;
+    }
+
+    /**
+     * Locks the user's row without taking a number, for a change that is not published yet.
+     */
+    public void lock(long userId) {
+        jdbcTemplate.update(LOCK_SQL, userId);
+    }
+
+    /**
+     * Locks the rows of those users that no other transaction holds, in user id order, and returns their ids:
+     * until commit, nothing else changes these users' notifications.
+     */
+    public List<Long> tryLock(List<Long> userIds) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(TRY_LOCK_SQL);
+            ps.setArray(1, connection.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        }, (rs, rowNum) -> rs.getLong("user_id"));
+    }
+
+    /**
+     * The last number handed out to the user, 0 if none.
+     */
+    public long current(long userId) {
+        return jdbcTemplate.queryForObject(CURRENT_SQL, Long.class, userId);
+    }
+}
@@ -1,25 +1,38 @@
 package org.example.demows.service.Impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.example.demows.dto.BroadcastNotificationRequest;
 import org.example.demows.dto.CreateNotificationRequest;
+import org.example.demows.dto.NotificationBroadcastDto;
+import org.example.demows.dto.NotificationDigestDto;
 import org.example.demows.dto.NotificationDto;
+import org.example.demows.dto.NotificationPageDto;
+import org.example.demows.dto.NotificationReplayDto;
 import org.example.demows.dto.WebSocketMessageType;
 import org.example.demows.dto.WebSocketMessage;
 import org.example.demows.entity.Notification;
+import org.example.demows.entity.NotificationOutbox;
 import org.example.demows.entity.User;
 import org.example.demows.exception.ResourceNotFoundException;
+import org.example.demows.repository.NotificationOutboxRepository;
 import org.example.demows.repository.NotificationRepository;
 import org.example.demows.service.NotificationService;
 import org.example.demows.service.UserService;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
@@ -29,42 +42,138 @@ public class NotificationServiceImpl implements NotificationService {
     private final UserService userService;
     private final NotificationRepository notificationRepository;
     private final ObjectMapper objectMapper;
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationBroadcaster notificationBroadcaster;
+    private final NotificationSequencer notificationSequencer;
+    private final NotificationReplayLog notificationReplayLog;
 
+    // Cursor: created_at and id of the last notification of a page
+    private static final char CURSOR_SEPARATOR = '_';
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    // Larger gaps are answered with the newest page instead
+    private static final int MAX_REPLAY = 500;
+    private static final String PRIORITY_LOW = "LOW";
+    private static final String PRIORITY_NORMAL = "NORMAL";
+    private static final String PRIORITY_URGENT = "URGENT";
 
-    // get user notification
+    @Value("${notification.digest.batch-size:10000}")
+    private int digestBatchSize;
+
+    // Get one page of the user's notifications, newest first
     @Override
-    public List<NotificationDto> getUserNotifications(String username){
-        log.info("Fetching notifications for user: {}", username);
+    public NotificationPageDto getUserNotifications(String username, String before, Integer limit){
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        log.info("Fetching notifications for user: {} [before: {}, limit: {}]", username, before, pageSize);
         User user =  (User) userService.loadUserByUsername(username);
-        List<Notification> notifications = notificationRepository.findAllNotificationsForUser(user.getId());
 
-        return notifications.stream()
-                .map(this::mapToDto)
-                .toList();
+        // One extra row tells whether an older page exists
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<Notification> notifications;
+        if (before == null) {
+            notifications = notificationRepository.findNotificationPageForUser(user.getId(), page);
+        } else {
+            int separator = before.lastIndexOf(CURSOR_SEPARATOR);
+            try {
+                notifications = notificationRepository.findNotificationPageForUser(user.getId(),
+                        LocalDateTime.parse(before.substring(0, separator)), Long.valueOf(before.substring(separator + 1)), page);
+            } catch (DateTimeParseException | IndexOutOfBoundsException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid notification cursor: " + before);
+            }
+        }
+
+        boolean hasMore = notifications.size() > pageSize;
+        List<Notification> pageItems = notifications.subList(0, Math.min(pageSize, notifications.size()));
+        Notification last = pageItems.isEmpty() ? null : pageItems.get(pageItems.size() - 1);
+
+        return NotificationPageDto.builder()
+                .notifications(pageItems.stream().map(this::mapToDto).toList())
+                .nextCursor(hasMore ? last.getCreatedAt().toString() + CURSOR_SEPARATOR + last.getId() : null)
+                .hasMore(hasMore)
+                .unreadCount(notificationRepository.countUnreadNotificationsForUser(user.getId()))
+                .lastSeq(notificationSequencer.current(user.getId()))
+                .build();
     }
 
-    // Create new notification
+    // What changed after the client's last sequence number, or null if that is too much to replay
+    @Override
+    public NotificationReplayDto replayNotifications(String username, long sinceSeq){
+        List<NotificationDto> notifications = notificationReplayLog.replay(username, sinceSeq);
+        User user =  (User) userService.loadUserByUsername(username);
+        if (notifications == null) {
+            log.info("Replaying notifications of {} after {} from the database", username, sinceSeq);
+            List<Notification> changed = notificationRepository.findChangedSince(user.getId(), sinceSeq, PageRequest.of(0, MAX_REPLAY + 1));
+            if (changed.size() > MAX_REPLAY) {
+                return null;
+            }
+            notifications = changed.stream().map(this::mapToDto).toList();
+        }
+
+        return NotificationReplayDto.builder()
+                .notifications(notifications)
+                .lastSeq(notifications.isEmpty() ? sinceSeq : notifications.get(notifications.size() - 1).getSeq())
+                .unreadCount(notificationRepository.countUnreadNotificationsForUser(user.getId()))
+                .build();
+    }
+
+    @Override
+    public long getUnreadCount(String username){
+        User user =  (User) userService.loadUserByUsername(username);
+        return notificationRepository.countUnreadNotificationsForUser(user.getId());
+    }
+
+    // Create new notification, or replace the unread one with the same collapse key
     @Override
     public NotificationDto createNotification(String username, CreateNotificationRequest request){
         User user = (User) userService.loadUserByUsername(username);
-        Notification notification = Notification.builder()
-                .username(username)
-                .user(user)
-                .title(request.getTitle())
-                .message(request.getMessage())
-                .type(request.getType())
-                .priority(request.getPriority())
-                .isActive(true)
-                .isRead(false)
-                .createdAt(LocalDateTime.now())
-                .build();
+        String priority = request.getPriority() != null ? request.getPriority() : PRIORITY_NORMAL;
+        boolean urgent = PRIORITY_URGENT.equals(priority);
+        boolean digest = PRIORITY_LOW.equals(priority);
+        // Taken first: it locks the user's sequence row, so creates with the same collapse key run one at a time.
+        // A digested notification is numbered when the digest delivers it: a number taken now would never be
+        // published, and the gap would make every replay across it fail
+        Long seq = null;
+        if (digest) {
+            notificationSequencer.lock(user.getId());
+        } else {
+            seq = notificationSequencer.next(user.getId());
+        }
+
+        Notification notification = null;
+        if (!urgent && request.getCollapseKey() != null) {
+            notification = notificationRepository.findUnreadByCollapseKey(user.getId(), request.getCollapseKey())
+                    .stream().findFirst().orElse(null);
+        }
+        boolean collapsed = notification != null;
+        if (!collapsed) {
+            notification = Notification.builder()
+                    .username(username)
+                    .user(user)
+                    .isActive(true)
+                    .isRead(false)
+                    .build();
+        }
+        notification.setTitle(request.getTitle());
+        notification.setMessage(request.getMessage());
+        notification.setType(request.getType());
+        notification.setPriority(priority);
+        notification.setCollapseKey(request.getCollapseKey());
+        notification.setCreatedAt(LocalDateTime.now());
+        notification.setSeq(seq);
+        notification.setDigestPending(digest);
         Notification savedNotification = notificationRepository.save(notification);
         NotificationDto dto = mapToDto(savedNotification);
+        if (collapsed) {
+            log.debug("Collapsed notification {} of {} by key {}", dto.getId(), username, request.getCollapseKey());
+        }
 
-        // Publish real-time update
-        publishNotificationUpdate(dto, username);
+        // Publish real-time update; LOW priority waits for the next digest
+        if (!digest) {
+            publishNotificationUpdate(dto, username);
+            if (!collapsed) {
+                publishUnreadCount(username, user.getId());
+            }
+        }
 
         return dto;
     }
@@ -80,38 +189,106 @@ public class NotificationServiceImpl implements NotificationService {
         if(!notification.getUser().getId().equals(user.getId())){
             throw new ResourceNotFoundException("Notification not found");
         }
+        boolean wasUnread = !Boolean.TRUE.equals(notification.getIsRead());
         notification.setIsRead(true);
         notification.setReadAt(LocalDateTime.now());
+        notification.setDigestPending(false); // this update delivers it
+        notification.setSeq(notificationSequencer.next(user.getId()));
         Notification savedNotification = notificationRepository.save(notification);
         NotificationDto dto = mapToDto(savedNotification);
         // Publish update
         publishNotificationUpdate(dto, username);
+        if (wasUnread) {
+            publishUnreadCount(username, user.getId());
+        }
 
         return dto;
     }
 
-    // Publish to Kafka and WebSocket
-    public void publishNotificationUpdate(NotificationDto notificationDto, String username){
-        try{
-            WebSocketMessage<NotificationDto> message = WebSocketMessage.<NotificationDto>builder()
-                    .type(WebSocketMessageType.NOTIFICATION_UPDATE.name())
-                    .data(notificationDto)
-                    .timestamp(LocalDateTime.now().toString())
-                    .build();
-            String messageJson = objectMapper.writeValueAsString(message);
-            log.debug("Notification update message: {}", messageJson);
+    // Send one notification to many users, in the background
+    @Override
+    public NotificationBroadcastDto broadcastNotification(String adminUsername, BroadcastNotificationRequest request){
+        log.info("User {} starting a {} notification broadcast: {}", adminUsername, request.getTarget(), request.getTitle());
+        return notificationBroadcaster.start(request);
+    }
+
+    @Override
+    public NotificationBroadcastDto getBroadcast(String broadcastId){
+        NotificationBroadcastDto broadcast = notificationBroadcaster.get(broadcastId);
+        if (broadcast == null) {
+            throw new ResourceNotFoundException("Notification broadcast not found");
+        }
+        return broadcast;
+    }
 
-            // Send to Kafka topics
-            kafkaTemplate.send("notifications", messageJson);
+    // Push the LOW priority notifications waiting for a digest, one frame per user. The users' sequence rows
+    // are locked first (SKIP LOCKED: instances flush disjoint users), in the same order as every other change
+    // of a notification. Each digested notification takes its sequence number only now, when it is delivered
+    @Scheduled(fixedDelayString = "${notification.digest.interval-ms:60000}")
+    public void flushDigests(){
+        List<Long> userIds = notificationRepository.findDigestPendingUserIds(digestBatchSize);
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<Long> locked = notificationSequencer.tryLock(userIds);
+        if (locked.isEmpty()) {
+            return;
+        }
+        List<Notification> pending = notificationRepository.findDigestPending(locked);
+        if (pending.isEmpty()) {
+            return; // read meanwhile
+        }
+        Map<String, List<Notification>> byUser = new LinkedHashMap<>();
+        for (Notification notification : pending) {
+            notification.setDigestPending(false);
+            notification.setSeq(notificationSequencer.next(notification.getUser().getId()));
+            byUser.computeIfAbsent(notification.getUsername(), username -> new ArrayList<>()).add(notification);
+        }
+        byUser.forEach((username, notifications) -> enqueue(username, WebSocketMessage.<NotificationDigestDto>builder()
+                .type(WebSocketMessageType.NOTIFICATION_DIGEST.name())
+                .data(NotificationDigestDto.builder()
+                        .notifications(notifications.stream().map(this::mapToDto).toList())
+                        .unreadCount(notificationRepository.countUnreadNotificationsForUser(notifications.get(0).getUser().getId()))
+                        .build())
+                .timestamp(LocalDateTime.now().toString())
+                .build()));
+        log.info("Queued notification digests of {} notifications for {} users", pending.size(), byUser.size());
+    }
+
+    // Queue the update in the outbox, in the caller's transaction; the outbox relay publishes it to Kafka
+    // and the notifications consumer delivers it to the user's WebSocket queue
+    public void publishNotificationUpdate(NotificationDto notificationDto, String username){
+        enqueue(username, WebSocketMessage.<NotificationDto>builder()
+                .type(WebSocketMessageType.NOTIFICATION_UPDATE.name())
+                .data(notificationDto)
+                .timestamp(LocalDateTime.now().toString())
+                .build());
+    }
 
-            // Send to user's WebSocket queue
-            // Used to send WebSocket messages to clients — typically via STOMP protocol.
-            // Sends real-time updates to all clients subscribed to /topic/notifications.
-            messagingTemplate.convertAndSendToUser(username, "/queue/notifications", message);
+    // Push the new unread count, so clients keep their badge without polling
+    private void publishUnreadCount(String username, Long userId){
+        notificationRepository.flush();
+        long unreadCount = notificationRepository.countUnreadNotificationsForUser(userId);
+        enqueue(username, WebSocketMessage.<Long>builder()
+                .type(WebSocketMessageType.NOTIFICATION_UNREAD_COUNT.name())
+                .data(unreadCount)
+                .timestamp(LocalDateTime.now().toString())
+                .build());
+    }
 
-        } catch (Exception e){
-            log.error("Error publishing notification update", e);
+    private void enqueue(String username, WebSocketMessage<?> message){
+        String messageJson;
+        try{
+            messageJson = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e){
+            throw new IllegalStateException("Could not serialize notification message", e);
         }
+        log.debug("Queued notification message for {}: {}", username, messageJson);
+        notificationOutboxRepository.save(NotificationOutbox.builder()
+                .username(username)
+                .payload(messageJson)
+                .createdAt(LocalDateTime.now())
+                .build());
     }
 
     private NotificationDto mapToDto(Notification notification) {
@@ -125,6 +302,7 @@ public class NotificationServiceImpl implements NotificationService {
                 .isRead(notification.getIsRead())
                 .createdAt(String.valueOf(notification.getCreatedAt()))
                 .readAt(String.valueOf(notification.getReadAt()))
+                .seq(notification.getSeq())
                 .build();
     }
 
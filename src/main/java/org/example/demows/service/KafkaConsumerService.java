@@ -1,18 +1,27 @@
 package org.example.demows.service;
 
-import java.util.List;
-
 import org.example.demows.dto.ChatMessageDto;
-import org.example.demows.dto.ExchangeRateDto;
+import org.example.demows.dto.ChatReadReceiptDto;
+import org.example.demows.dto.NotificationBatchDto;
+import org.example.demows.dto.NotificationDigestDto;
 import org.example.demows.dto.NotificationDto;
 import org.example.demows.dto.PromotionDto;
 import org.example.demows.dto.WebSocketMessage;
+import org.example.demows.dto.WebSocketMessageType;
+import org.example.demows.service.Impl.ChatConversationCache;
+import org.example.demows.service.Impl.ChatSendDeduplicator;
+import org.example.demows.service.Impl.NotificationReplayLog;
+import org.example.demows.websocket.NotificationFanOut;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
@@ -28,6 +37,10 @@ public class KafkaConsumerService {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final ObjectMapper objectMapper;
+    private final ChatConversationCache chatConversationCache;
+    private final ChatSendDeduplicator chatSendDeduplicator;
+    private final NotificationFanOut notificationFanOut;
+    private final NotificationReplayLog notificationReplayLog;
 
     // @KafkaListener(topics = "exchange-rates", groupId = "demo-ws-group")
     // public void consumeExchangeRateUpdates(String message) {
@@ -47,25 +60,6 @@ public class KafkaConsumerService {
     // }
     // }
 
-    @KafkaListener(topics = "exchange-rates", groupId = "demo-ws-group")
-    public void consumeExchangeRateUpdates(String message) {
-        try {
-            WebSocketMessage<List<ExchangeRateDto>> webSocketMessage = objectMapper.readValue(
-                    message,
-                    objectMapper.getTypeFactory().constructParametricType(
-                            WebSocketMessage.class,
-                            objectMapper.getTypeFactory().constructCollectionType(List.class, ExchangeRateDto.class)));
-
-            log.debug("Received exchange rate update from Kafka: {}", message);
-
-            // Broadcast to all WebSocket subscribers
-            messagingTemplate.convertAndSend("/topic/exchange-rates", webSocketMessage);
-
-        } catch (JsonProcessingException e) {
-            log.error("Error processing exchange rate message from Kafka", e);
-        }
-    }
-
     @KafkaListener(topics = "promotions", groupId = "demo-ws-group")
     public void consumePromotionUpdates(String message) {
         try {
@@ -83,18 +77,41 @@ public class KafkaConsumerService {
         }
     }
 
-    @KafkaListener(topics = "notifications", groupId = "notification-group")
-    public void handleNotificationMessage(String message) {
+    /**
+     * The only delivery path of notification frames (published by the notification outbox relay). Each instance
+     * consumes the whole topic in its own group and delivers to the sessions connected to it; the record key is
+     * the recipient, except for broadcast batches, which are expanded and paced by {@link NotificationFanOut}.
+     */
+    @KafkaListener(topics = "notifications", groupId = "notification-fanout-#{T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void handleNotificationMessage(@Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String username,
+                                          @Payload String message) {
         try {
             log.debug("Received notification message: {}", message);
 
-            WebSocketMessage<NotificationDto> notificationMessage = objectMapper
-                    .readValue(message, new TypeReference<WebSocketMessage<NotificationDto>>() {
-                    });
-
-            // Extract username from notification data
-            NotificationDto notification = notificationMessage.getData();
-            String username = notification.getUsername(); // You'll need to add this to DTO
+            JsonNode notificationMessage = objectMapper.readTree(message);
+            String type = notificationMessage.path("type").asText();
+            if (WebSocketMessageType.NOTIFICATION_BATCH.name().equals(type)) {
+                NotificationBatchDto batch = objectMapper.treeToValue(notificationMessage.get("data"), NotificationBatchDto.class);
+                batch.getRecipients().forEach(recipient -> notificationReplayLog.appendIfTracked(batch.toNotification(recipient)));
+                notificationFanOut.deliver(batch);
+                return;
+            }
+            if (WebSocketMessageType.NOTIFICATION_UPDATE.name().equals(type)) {
+                notificationReplayLog.append(objectMapper.treeToValue(notificationMessage.get("data"), NotificationDto.class));
+            }
+            if (WebSocketMessageType.NOTIFICATION_DIGEST.name().equals(type)) {
+                objectMapper.treeToValue(notificationMessage.get("data"), NotificationDigestDto.class)
+                        .getNotifications().forEach(notificationReplayLog::append);
+            }
+            if (username == null) {
+                // Records published before the outbox carry the recipient only in the notification
+                username = notificationMessage.path("data").path("username").asText(null);
+            }
+            if (username == null) {
+                log.warn("Dropping notification message without recipient: {}", message);
+                return;
+            }
 
             // Send to specific user's WebSocket queue
             messagingTemplate.convertAndSendToUser(username, "/queue/notifications", notificationMessage);
@@ -131,6 +148,30 @@ public class KafkaConsumerService {
         }
     }
 
+    /**
+     * Keeps this instance's conversation cache and send dedupe window in line with sends and reads on every instance. Each instance
+     * consumes the whole topic in its own group; applying the instance's own records again is harmless.
+     */
+    @KafkaListener(topics = "chat-messages", groupId = "chat-cache-#{T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void refreshChatCache(String message) {
+        try {
+            JsonNode root = objectMapper.readTree(message);
+            String type = root.path("type").asText();
+            if (WebSocketMessageType.CHAT_MESSAGE.name().equals(type)) {
+                ChatMessageDto chatMessage = objectMapper.treeToValue(root.get("data"), ChatMessageDto.class);
+                chatConversationCache.put(chatMessage);
+                chatSendDeduplicator.remember(chatMessage);
+            } else if (WebSocketMessageType.CHAT_READ_UPTO.name().equals(type)) {
+                ChatReadReceiptDto receipt = objectMapper.treeToValue(root.get("data"), ChatReadReceiptDto.class);
+                chatConversationCache.markRead(receipt.getSenderUsername(), receipt.getReaderUsername(),
+                        receipt.getUpToMessageId(), receipt.getReadAt());
+            }
+        } catch (Exception e) {
+            log.error("Error applying chat message to the conversation cache", e);
+        }
+    }
+
     @KafkaListener(topics = "postgres.dbserver1.public.promotions", groupId = "ws-group")
     public void consumePromotion(String message) {
         log.info("Received from Debezium: {}", message);
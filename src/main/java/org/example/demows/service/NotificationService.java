@@ -1,13 +1,19 @@
 package org.example.demows.service;
 
 
+import org.example.demows.dto.BroadcastNotificationRequest;
 import org.example.demows.dto.CreateNotificationRequest;
+import org.example.demows.dto.NotificationBroadcastDto;
 import org.example.demows.dto.NotificationDto;
-
-import java.util.List;
+import org.example.demows.dto.NotificationPageDto;
+import org.example.demows.dto.NotificationReplayDto;
 
 public interface NotificationService {
-    List<NotificationDto> getUserNotifications(String username);
+    NotificationPageDto getUserNotifications(String username, String before, Integer limit);
+    long getUnreadCount(String username);
+    NotificationReplayDto replayNotifications(String username, long sinceSeq);
     NotificationDto createNotification(String username, CreateNotificationRequest request);
     NotificationDto markNotificationAsRead(Long notificationId, String username);
+    NotificationBroadcastDto broadcastNotification(String adminUsername, BroadcastNotificationRequest request);
+    NotificationBroadcastDto getBroadcast(String broadcastId);
 }
@@ -0,0 +1,64 @@
+package org.example.demows.websocket;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * STOMP MESSAGE frame encoded once and shared by every subscriber of a broadcast.
+ * Only the {@code subscription} header differs between sessions; since most clients use the same
+ * generated ids ({@code sub-0}, {@code sub-1}, ...) the final frame is cached per subscription id.
+ */
+public final class BroadcastFrame {
+
+    private final byte[] head;
+    private final byte[] tail;
+    private final ConcurrentMap<String, TextMessage> bySubscription = new ConcurrentHashMap<>();
+
+    private BroadcastFrame(byte[] head, byte[] tail) {
+        this.head = head;
+        this.tail = tail;
+    }
+
+    public static BroadcastFrame of(String destination, String messageId, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        String headers = "MESSAGE\n"
+                + "destination:" + escape(destination) + "\n"
+                + "content-type:application/json\n"
+                + "message-id:" + escape(messageId) + "\n"
+                + "content-length:" + body.length + "\n";
+
+        byte[] tail = new byte[body.length + 2];
+        tail[0] = '\n';
+        System.arraycopy(body, 0, tail, 1, body.length);
+        tail[tail.length - 1] = 0;
+
+        return new BroadcastFrame(headers.getBytes(StandardCharsets.UTF_8), tail);
+    }
+
+    public TextMessage forSubscription(String subscriptionId) {
+        return bySubscription.computeIfAbsent(subscriptionId, this::encode);
+    }
+
+    private TextMessage encode(String subscriptionId) {
+        byte[] subscription = ("subscription:" + escape(subscriptionId) + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[head.length + subscription.length + tail.length];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(subscription, 0, frame, head.length, subscription.length);
+        System.arraycopy(tail, 0, frame, head.length + subscription.length, tail.length);
+        return new TextMessage(frame);
+    }
+
+    // STOMP 1.2 header value escaping
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf(':') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\")
+                .replace(":", "\\c")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r");
+    }
+}
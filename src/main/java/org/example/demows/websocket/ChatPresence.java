@@ -0,0 +1,217 @@
+package org.example.demows.websocket;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.ChatTypingDto;
+import org.example.demows.dto.PresenceDto;
+import org.example.demows.dto.WebSocketMessage;
+import org.example.demows.dto.WebSocketMessageType;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ephemeral chat signals: typing indicators and online presence, delivered on {@code /user/queue/presence}.
+ * Nothing here touches the database or Kafka, and all state is node-local.
+ * <p>
+ * Presence follows the STOMP sessions on this node: a user is online from their first CONNECT to their last
+ * DISCONNECT. Users ask for the presence of the users they show ({@code /app/chat/presence}) and then get
+ * every change of those. Typing events are coalesced per (sender, receiver): each flush delivers at most one
+ * frame per pair, and only when the state changed. A typing state nobody refreshes expires.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatPresence {
+
+    public static final String PRESENCE_QUEUE = "/queue/presence";
+    private static final long TYPING_TIMEOUT_MILLIS = 5_000;
+    private static final int MAX_WATCHED = 200;
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // username -> ids of the user's open sessions on this node
+    private final ConcurrentMap<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LocalDateTime> lastSeen = new ConcurrentHashMap<>();
+    // watched username -> watchers, and watcher -> watched usernames
+    private final ConcurrentMap<String, Set<String>> watchers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> watching = new ConcurrentHashMap<>();
+    // sender + NUL + receiver -> typing state
+    private final ConcurrentMap<String, TypingState> typing = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+        if (user == null || sessionId == null) {
+            return;
+        }
+        boolean[] first = new boolean[1];
+        sessionsByUser.compute(user.getName(), (username, sessions) -> {
+            Set<String> next = sessions != null ? sessions : new HashSet<>();
+            first[0] = next.isEmpty();
+            next.add(sessionId);
+            return next;
+        });
+        if (first[0]) {
+            lastSeen.remove(user.getName());
+            publish(presenceOf(user.getName()));
+        }
+    }
+
+    // May be called more than once per session
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        boolean[] last = new boolean[1];
+        sessionsByUser.computeIfPresent(user.getName(), (username, sessions) -> {
+            last[0] = sessions.remove(event.getSessionId()) && sessions.isEmpty();
+            return sessions.isEmpty() ? null : sessions;
+        });
+        if (last[0]) {
+            lastSeen.put(user.getName(), LocalDateTime.now());
+            watch(user.getName(), List.of());
+            publish(presenceOf(user.getName()));
+        }
+    }
+
+    /**
+     * Makes {@code watcher} follow the presence of {@code usernames} (replacing what it followed before)
+     * and returns their current presence.
+     */
+    public List<PresenceDto> watch(String watcher, List<String> usernames) {
+        Set<String> next = Set.copyOf(usernames.subList(0, Math.min(usernames.size(), MAX_WATCHED)));
+        Set<String> previous = next.isEmpty() ? watching.remove(watcher) : watching.put(watcher, next);
+        if (previous != null) {
+            previous.stream()
+                    .filter(username -> !next.contains(username))
+                    .forEach(username -> watchers.computeIfPresent(username, (key, set) -> {
+                        set.remove(watcher);
+                        return set.isEmpty() ? null : set;
+                    }));
+        }
+        next.forEach(username -> watchers.compute(username, (key, set) -> {
+            Set<String> updated = set != null ? set : ConcurrentHashMap.newKeySet();
+            updated.add(watcher);
+            return updated;
+        }));
+        return next.stream().map(this::presenceOf).toList();
+    }
+
+    /**
+     * Records a typing event; it is delivered with the next flush.
+     */
+    public void typing(String senderUsername, String receiverUsername, boolean isTyping) {
+        long now = System.currentTimeMillis();
+        // Updated inside compute, so a concurrent flush cannot drop the state in between
+        typing.compute(senderUsername + '\0' + receiverUsername, (key, state) -> {
+            TypingState updated = state != null ? state : new TypingState(senderUsername, receiverUsername);
+            updated.update(isTyping, now);
+            return updated;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.coalesce-ms:300}")
+    public void flushTyping() {
+        long now = System.currentTimeMillis();
+        List<ChatTypingDto> frames = new ArrayList<>();
+        for (String key : typing.keySet()) {
+            typing.computeIfPresent(key, (k, state) -> {
+                Boolean changed = state.drain(now);
+                if (changed != null) {
+                    frames.add(ChatTypingDto.builder()
+                            .senderUsername(state.senderUsername)
+                            .receiverUsername(state.receiverUsername)
+                            .typing(changed)
+                            .build());
+                }
+                return state.isIdle() ? null : state;
+            });
+        }
+        frames.forEach(frame -> send(frame.getReceiverUsername(), WebSocketMessageType.CHAT_TYPING, frame));
+    }
+
+    private PresenceDto presenceOf(String username) {
+        LocalDateTime seen = lastSeen.get(username);
+        return PresenceDto.builder()
+                .username(username)
+                .online(sessionsByUser.containsKey(username))
+                .lastSeen(seen != null ? seen.toString() : null)
+                .build();
+    }
+
+    private void publish(PresenceDto presence) {
+        Set<String> current = watchers.get(presence.getUsername());
+        if (current == null) {
+            return;
+        }
+        for (String watcher : current) {
+            send(watcher, WebSocketMessageType.PRESENCE_UPDATE, presence);
+        }
+    }
+
+    private void send(String username, WebSocketMessageType type, Object data) {
+        try {
+            messagingTemplate.convertAndSendToUser(username, PRESENCE_QUEUE, WebSocketMessage.builder()
+                    .type(type.name())
+                    .data(data)
+                    .timestamp(LocalDateTime.now().toString())
+                    .build());
+        } catch (Exception e) {
+            log.debug("Could not deliver {} to {}: {}", type, username, e.getMessage());
+        }
+    }
+
+    /**
+     * Latest typing state of one (sender, receiver) pair and the state the receiver last got.
+     */
+    private static final class TypingState {
+
+        private final String senderUsername;
+        private final String receiverUsername;
+        private boolean typing;
+        private boolean delivered;
+        private long lastEventAt;
+
+        TypingState(String senderUsername, String receiverUsername) {
+            this.senderUsername = senderUsername;
+            this.receiverUsername = receiverUsername;
+        }
+
+        synchronized void update(boolean isTyping, long now) {
+            typing = isTyping;
+            lastEventAt = now;
+        }
+
+        // The state to deliver now, or null if the receiver already has it
+        synchronized Boolean drain(long now) {
+            if (typing && now - lastEventAt > TYPING_TIMEOUT_MILLIS) {
+                typing = false;
+            }
+            if (typing == delivered) {
+                return null;
+            }
+            delivered = typing;
+            return delivered;
+        }
+
+        synchronized boolean isIdle() {
+            return !typing && !delivered;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.example.demows.websocket;
+
+/**
+ * Payload that can absorb a newer payload of the same stream, so a slow session
+ * only ever holds one pending value of it (see {@link StompBroadcaster#broadcastConflated}).
+ */
+public interface Conflatable<T extends Conflatable<T>> {
+
+    /**
+     * Returns a new payload equivalent to applying this one and then {@code newer}.
+     * Implementations must not modify either instance, both may be shared between sessions.
+     */
+    T conflate(T newer);
+}
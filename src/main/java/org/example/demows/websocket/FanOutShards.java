@@ -0,0 +1,118 @@
+package org.example.demows.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Fixed set of single-threaded executors used for outbound fan-out.
+ * A session is always pinned to the same shard, so per-session delivery order is preserved
+ * while a broadcast is spread across all cores.
+ * <p>
+ * Shard tasks must not block on a socket: direct writes to a session run on the separate
+ * {@link #write writer} pool, so one stuck client only holds a writer thread, not its whole shard.
+ */
+@Component
+@Slf4j
+public class FanOutShards implements DisposableBean {
+
+    private final ExecutorService[] shards;
+    private final ExecutorService writers = Executors.newCachedThreadPool(new CustomizableThreadFactory("ws-writer-"));
+
+    public FanOutShards(@Value("${websocket.broker.shards:0}") int shardCount) {
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("ws-fanout-" + i + "-"));
+        }
+        log.info("Initialized {} WebSocket fan-out shards", count);
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    public int shardOf(String sessionId) {
+        return Math.floorMod(sessionId.hashCode(), shards.length);
+    }
+
+    public void execute(int shard, Runnable task) {
+        try {
+            shards[shard].execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Fan-out shard {} is shut down, dropping task", shard);
+        }
+    }
+
+    public void execute(String sessionId, Runnable task) {
+        execute(shardOf(sessionId), task);
+    }
+
+    /**
+     * Runs a task that may block on a session's socket (bounded by the container's send timeout).
+     */
+    public void write(Runnable task) {
+        try {
+            writers.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("WebSocket writers are shut down, dropping task");
+        }
+    }
+
+    /**
+     * Groups subscriptions (sessionId -> subscriptionIds) by shard and submits one task per shard.
+     */
+    public void dispatch(MultiValueMap<String, String> subscriptions, BiConsumer<String, List<String>> sender) {
+        List<List<String>> buckets = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            buckets.add(null);
+        }
+        for (String sessionId : subscriptions.keySet()) {
+            int shard = shardOf(sessionId);
+            List<String> bucket = buckets.get(shard);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.set(shard, bucket);
+            }
+            bucket.add(sessionId);
+        }
+
+        for (int shard = 0; shard < buckets.size(); shard++) {
+            List<String> sessionIds = buckets.get(shard);
+            if (sessionIds != null) {
+                execute(shard, () -> {
+                    for (String sessionId : sessionIds) {
+                        sender.accept(sessionId, subscriptions.get(sessionId));
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        for (ExecutorService shard : shards) {
+            if (!shard.awaitTermination(5, TimeUnit.SECONDS)) {
+                shard.shutdownNow();
+            }
+        }
+        writers.shutdown();
+        if (!writers.awaitTermination(5, TimeUnit.SECONDS)) {
+            writers.shutdownNow();
+        }
+    }
+}
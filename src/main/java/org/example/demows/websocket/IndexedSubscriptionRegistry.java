@@ -0,0 +1,197 @@
+package org.example.demows.websocket;
+
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Subscription registry backed by an exact-match destination index and a separate pattern index.
+ * Subscribe/unsubscribe are serialized per destination through striped locks, lookups are lock-free,
+ * so a broadcast only touches the subscribers of its own destination plus the (few) patterns.
+ * <p>
+ * Publishers that route by destination (e.g. per currency pair) can register a destination group
+ * and enumerate just the destinations subscribed under that prefix.
+ */
+@Component
+public class IndexedSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // destination -> sessionId -> subscriptionIds
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> exactIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<String>>> patternIndex = new ConcurrentHashMap<>();
+
+    // sessionId -> subscriptionId -> destination
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> sessionIndex = new ConcurrentHashMap<>();
+
+    // group prefix -> destination -> sessionId -> subscriptionIds (same inner maps as the indexes above)
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Set<String>>>> groupIndex = new ConcurrentHashMap<>();
+
+    public IndexedSubscriptionRegistry() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination, Message<?> message) {
+        ConcurrentMap<String, ConcurrentMap<String, Set<String>>> index = indexFor(destination);
+        synchronized (lockFor(destination)) {
+            ConcurrentMap<String, Set<String>> sessions = index.computeIfAbsent(destination, d -> {
+                ConcurrentMap<String, Set<String>> created = new ConcurrentHashMap<>();
+                groupIndex.forEach((prefix, group) -> {
+                    if (destination.startsWith(prefix)) {
+                        group.put(destination, created);
+                    }
+                });
+                return created;
+            });
+            sessions.computeIfAbsent(sessionId, s -> ConcurrentHashMap.newKeySet()).add(subscriptionId);
+        }
+        ConcurrentMap<String, String> subscriptions = sessionIndex.computeIfAbsent(sessionId, s -> new ConcurrentHashMap<>());
+        subscriptions.put(subscriptionId, destination);
+        // A DISCONNECT that took the session's map before the put above never saw this subscription
+        if (sessionIndex.get(sessionId) != subscriptions) {
+            subscriptions.remove(subscriptionId);
+            removeFromIndex(destination, sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = sessionIndex.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            removeFromIndex(destination, sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = sessionIndex.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) -> removeFromIndex(destination, sessionId, subscriptionId));
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, @Nullable Message<?> message) {
+        MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+        collect(exactIndex.get(destination), result);
+        if (!patternIndex.isEmpty()) {
+            patternIndex.forEach((pattern, sessions) -> {
+                if (pathMatcher.match(pattern, destination)) {
+                    collect(sessions, result);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Looks up subscribers of a destination without building a broker message first.
+     */
+    public MultiValueMap<String, String> findSubscriptions(String destination) {
+        return findSubscriptionsInternal(destination, null);
+    }
+
+    /**
+     * Starts tracking the destinations subscribed under the given prefix, including existing ones.
+     */
+    public void registerDestinationGroup(String prefix) {
+        if (groupIndex.containsKey(prefix)) {
+            return;
+        }
+        ConcurrentMap<String, ConcurrentMap<String, Set<String>>> group = new ConcurrentHashMap<>();
+        if (groupIndex.putIfAbsent(prefix, group) != null) {
+            return;
+        }
+        backfill(prefix, group, exactIndex);
+        backfill(prefix, group, patternIndex);
+    }
+
+    /**
+     * Visits every subscribed destination of a group with its subscriptions (sessionId -> subscriptionIds),
+     * registering the group on first use.
+     */
+    public void forEachDestinationInGroup(String prefix, BiConsumer<String, MultiValueMap<String, String>> consumer) {
+        registerDestinationGroup(prefix);
+        groupIndex.get(prefix).forEach((destination, sessions) -> {
+            MultiValueMap<String, String> subscriptions = new LinkedMultiValueMap<>();
+            collect(sessions, subscriptions);
+            if (!subscriptions.isEmpty()) {
+                consumer.accept(destination, subscriptions);
+            }
+        });
+    }
+
+    private void backfill(String prefix, Map<String, ConcurrentMap<String, Set<String>>> group,
+                          ConcurrentMap<String, ConcurrentMap<String, Set<String>>> index) {
+        index.forEach((destination, sessions) -> {
+            if (destination.startsWith(prefix)) {
+                synchronized (lockFor(destination)) {
+                    if (index.get(destination) == sessions) {
+                        group.put(destination, sessions);
+                    }
+                }
+            }
+        });
+    }
+
+    private void removeFromIndex(String destination, String sessionId, String subscriptionId) {
+        ConcurrentMap<String, ConcurrentMap<String, Set<String>>> index = indexFor(destination);
+        synchronized (lockFor(destination)) {
+            ConcurrentMap<String, Set<String>> sessions = index.get(destination);
+            if (sessions == null) {
+                return;
+            }
+            Set<String> subscriptionIds = sessions.get(sessionId);
+            if (subscriptionIds != null) {
+                subscriptionIds.remove(subscriptionId);
+                if (subscriptionIds.isEmpty()) {
+                    sessions.remove(sessionId);
+                }
+            }
+            if (sessions.isEmpty()) {
+                index.remove(destination);
+                groupIndex.forEach((prefix, group) -> group.remove(destination));
+            }
+        }
+    }
+
+    private void collect(Map<String, Set<String>> sessions, MultiValueMap<String, String> result) {
+        if (sessions == null) {
+            return;
+        }
+        sessions.forEach((sessionId, subscriptionIds) -> {
+            for (String subscriptionId : subscriptionIds) {
+                result.add(sessionId, subscriptionId);
+            }
+        });
+    }
+
+    private ConcurrentMap<String, ConcurrentMap<String, Set<String>>> indexFor(String destination) {
+        return pathMatcher.isPattern(destination) ? patternIndex : exactIndex;
+    }
+
+    private Object lockFor(String destination) {
+        return locks[Math.floorMod(destination.hashCode(), LOCK_STRIPES)];
+    }
+}
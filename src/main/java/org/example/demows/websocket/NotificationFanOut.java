@@ -0,0 +1,137 @@
+package org.example.demows.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.NotificationBatchDto;
+import org.example.demows.dto.NotificationDto;
+import org.example.demows.dto.WebSocketMessage;
+import org.example.demows.dto.WebSocketMessageType;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paced delivery of notification broadcast batches to the users connected to this instance.
+ * <p>
+ * Recipients' sessions are grouped by the fan-out shard that writes to them and sent one session at a time, in
+ * chunks of {@code notification.broadcast.fan-out-chunk-size} sessions, each shard getting at most one chunk per
+ * {@code notification.broadcast.fan-out-interval-ms}. Batches queue up behind each other per shard, so a large
+ * announcement is spread over time instead of flooding the shards that also carry chat and market data.
+ */
+@Component
+@Slf4j
+public class NotificationFanOut implements DisposableBean {
+
+    private static final String NOTIFICATIONS_QUEUE = "/queue/notifications";
+
+    private final FanOutShards shards;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry userRegistry;
+    private final int chunkSize;
+    private final long intervalMillis;
+    private final ScheduledExecutorService pacer = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("notification-fanout-pacer-"));
+    private final long[] nextSlot; // per shard, epoch millis; guarded by this
+
+    public NotificationFanOut(FanOutShards shards, SimpMessagingTemplate messagingTemplate, SimpUserRegistry userRegistry,
+                              @Value("${notification.broadcast.fan-out-chunk-size:200}") int chunkSize,
+                              @Value("${notification.broadcast.fan-out-interval-ms:50}") long intervalMillis) {
+        this.shards = shards;
+        this.messagingTemplate = messagingTemplate;
+        this.userRegistry = userRegistry;
+        this.chunkSize = chunkSize;
+        this.intervalMillis = intervalMillis;
+        this.nextSlot = new long[shards.size()];
+    }
+
+    /**
+     * Schedules a {@code NOTIFICATION_UPDATE} frame for every recipient of the batch with a session on this instance.
+     */
+    public void deliver(NotificationBatchDto batch) {
+        List<List<Delivery>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        int connected = 0;
+        for (NotificationBatchDto.Recipient recipient : batch.getRecipients()) {
+            SimpUser user = userRegistry.getUser(recipient.getUsername());
+            if (user == null) {
+                continue;
+            }
+            // Shards are keyed by session: each session is paced on the shard its frames go out on
+            for (SimpSession session : user.getSessions()) {
+                byShard.get(shards.shardOf(session.getId())).add(new Delivery(recipient, session.getId()));
+            }
+            connected++;
+        }
+        if (connected == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (int shard = 0; shard < byShard.size(); shard++) {
+            List<Delivery> deliveries = byShard.get(shard);
+            for (int from = 0; from < deliveries.size(); from += chunkSize) {
+                List<Delivery> chunk = deliveries.subList(from, Math.min(from + chunkSize, deliveries.size()));
+                schedule(shard, reserveSlot(shard, now) - now, () -> chunk.forEach(delivery -> send(batch, delivery)));
+            }
+        }
+        log.debug("Scheduled broadcast {} to {} connected of {} recipients", batch.getBroadcastId(), connected,
+                batch.getRecipients().size());
+    }
+
+    private synchronized long reserveSlot(int shard, long now) {
+        long slot = Math.max(now, nextSlot[shard]);
+        nextSlot[shard] = slot + intervalMillis;
+        return slot;
+    }
+
+    private void schedule(int shard, long delayMillis, Runnable chunk) {
+        try {
+            pacer.schedule(() -> shards.execute(shard, chunk), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Notification fan-out is shut down, dropping chunk");
+        }
+    }
+
+    // To the one session only (the session id header narrows the user destination), not all of the user's sessions
+    private void send(NotificationBatchDto batch, Delivery delivery) {
+        NotificationBatchDto.Recipient recipient = delivery.recipient();
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(delivery.sessionId());
+        headers.setLeaveMutable(true);
+        try {
+            messagingTemplate.convertAndSendToUser(recipient.getUsername(), NOTIFICATIONS_QUEUE,
+                    WebSocketMessage.<NotificationDto>builder()
+                            .type(WebSocketMessageType.NOTIFICATION_UPDATE.name())
+                            .data(batch.toNotification(recipient))
+                            .timestamp(LocalDateTime.now().toString())
+                            .build(),
+                    headers.getMessageHeaders());
+        } catch (Exception e) {
+            log.debug("Could not deliver broadcast {} to {}: {}", batch.getBroadcastId(), recipient.getUsername(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pacer.shutdownNow();
+    }
+
+    private record Delivery(NotificationBatchDto.Recipient recipient, String sessionId) {
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.demows.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+
+import java.util.Collection;
+
+/**
+ * In-process STOMP broker that keeps the simple broker's protocol handling (CONNECT, heartbeats,
+ * DISCONNECT) and per-session bookkeeping, but resolves subscribers through {@link IndexedSubscriptionRegistry}
+ * and hands each session's outbound messages to its {@link FanOutShards} shard.
+ * <p>
+ * The base class still decides whether a session is connected and records its last write, so heartbeats are
+ * only sent to idle sessions and nothing is sent to sessions that are gone; only the send itself is sharded.
+ */
+@Slf4j
+public class ShardedBrokerMessageHandler extends SimpleBrokerMessageHandler {
+
+    private final FanOutShards shards;
+
+    public ShardedBrokerMessageHandler(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                                       SubscribableChannel brokerChannel, Collection<String> destinationPrefixes,
+                                       FanOutShards shards) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+        this.shards = shards;
+    }
+
+    // Used for every message of the session (CONNECT_ACK, MESSAGE, heartbeats), so they stay in order on one shard
+    @Override
+    protected MessageChannel getClientOutboundChannelForSession(String sessionId) {
+        MessageChannel channel = super.getClientOutboundChannelForSession(sessionId);
+        int shard = shards.shardOf(sessionId);
+        return new MessageChannel() {
+            @Override
+            public boolean send(Message<?> message, long timeout) {
+                shards.execute(shard, () -> {
+                    try {
+                        channel.send(message);
+                    } catch (Exception e) {
+                        log.error("Failed to send message to session {}", sessionId, e);
+                    }
+                });
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,226 @@
+package org.example.demows.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.demows.dto.WebSocketMessage;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Broadcast path for topic fan-out that serializes the payload and encodes the STOMP frame once,
+ * then hands the shared frame to every subscribed session on its fan-out shard. Each session drains its frames
+ * on one writer task at a time, so a client stuck in a blocking write never holds up the shard's other sessions.
+ * <p>
+ * Market-data style destinations can use {@link #broadcastConflated}: while a session's writer is busy, its
+ * pending {@link Conflatable} payload of each subscription absorbs the newer ones, so a slow consumer costs at
+ * most one value per subscription instead of a growing backlog of stale frames.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StompBroadcaster {
+
+    private final IndexedSubscriptionRegistry subscriptionRegistry;
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final FanOutShards shards;
+    private final ObjectMapper objectMapper;
+
+    // Frames per session not yet written; a session with more than this many is closed as too slow
+    private static final int MAX_PENDING_FRAMES = 1000;
+
+    private final AtomicLong messageIds = new AtomicLong();
+    private final ConcurrentMap<String, SessionWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Sends an already serialized JSON payload to every subscriber of the destination.
+     */
+    public void broadcast(String destination, String json) {
+        MultiValueMap<String, String> subscriptions = subscriptionRegistry.findSubscriptions(destination);
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        BroadcastFrame frame = newFrame(destination, json);
+        log.debug("Broadcasting frame on {} to {} sessions", destination, subscriptions.size());
+
+        shards.dispatch(subscriptions, (sessionId, subscriptionIds) -> send(sessionId, subscriptionIds, frame));
+    }
+
+    /**
+     * Like {@link #broadcast} but for conflatable payloads: sessions that are behind receive one merged
+     * payload per subscription once their writer gets to it, instead of every intermediate frame.
+     */
+    public <T extends Conflatable<T>> void broadcastConflated(String destination, WebSocketMessage<T> message, String json) {
+        MultiValueMap<String, String> subscriptions = subscriptionRegistry.findSubscriptions(destination);
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        dispatchConflated(destination, subscriptions, message, newFrame(destination, json));
+    }
+
+    /**
+     * Conflated broadcast to every subscribed destination of a registered destination group (see
+     * {@link IndexedSubscriptionRegistry#registerDestinationGroup}). The message for each destination is built and
+     * serialized once and shared by all of its subscribers; destinations mapped to {@code null} are skipped.
+     */
+    public <T extends Conflatable<T>> void broadcastConflatedToGroup(String destinationPrefix,
+                                                                     Function<String, WebSocketMessage<T>> messageForDestination) {
+        subscriptionRegistry.forEachDestinationInGroup(destinationPrefix, (destination, subscriptions) -> {
+            WebSocketMessage<T> message = messageForDestination.apply(destination);
+            if (message == null) {
+                return;
+            }
+            try {
+                BroadcastFrame frame = newFrame(destination, objectMapper.writeValueAsString(message));
+                dispatchConflated(destination, subscriptions, message, frame);
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing message for {}", destination, e);
+            }
+        });
+    }
+
+    private <T extends Conflatable<T>> void dispatchConflated(String destination, MultiValueMap<String, String> subscriptions,
+                                                              WebSocketMessage<T> message, BroadcastFrame frame) {
+        shards.dispatch(subscriptions, (sessionId, subscriptionIds) -> {
+            for (String subscriptionId : subscriptionIds) {
+                // Keyed by subscription: merges into the subscription's frame if that is still waiting
+                writerOf(sessionId).offer(subscriptionId, new QueuedFrame(subscriptionId, destination, frame, message));
+            }
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static QueuedFrame merge(QueuedFrame queued, QueuedFrame newer) {
+        WebSocketMessage<?> merged = WebSocketMessage.builder()
+                .type(newer.message().getType())
+                .data(((Conflatable) queued.message().getData()).conflate((Conflatable) newer.message().getData()))
+                .timestamp(newer.message().getTimestamp())
+                .build();
+        return new QueuedFrame(newer.subscriptionId(), newer.destination(), null, merged);
+    }
+
+    private BroadcastFrame newFrame(String destination, String json) {
+        return BroadcastFrame.of(destination, "b-" + messageIds.incrementAndGet(), json);
+    }
+
+    // Runs on the session's shard: only queues the frames, the session's writer sends them
+    private void send(String sessionId, List<String> subscriptionIds, BroadcastFrame frame) {
+        for (String subscriptionId : subscriptionIds) {
+            // Keyed by a fresh object: plain frames are never merged
+            writerOf(sessionId).offer(new Object(), new QueuedFrame(subscriptionId, null, frame, null));
+        }
+    }
+
+    private SessionWriter writerOf(String sessionId) {
+        return writers.computeIfAbsent(sessionId, SessionWriter::new);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        writers.remove(event.getSessionId());
+    }
+
+    private void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Error closing WebSocket session {}", session.getId(), e);
+        }
+    }
+
+    // A merged conflated message has no frame yet, it is serialized when written
+    private record QueuedFrame(String subscriptionId, String destination, BroadcastFrame frame, WebSocketMessage<?> message) {
+    }
+
+    /**
+     * Frames queued for one session, written by at most one writer task at a time.
+     */
+    private final class SessionWriter {
+
+        private final String sessionId;
+        // Insertion ordered; conflated frames keep their place when a newer payload is merged in
+        private final Map<Object, QueuedFrame> queue = new LinkedHashMap<>(); // guarded by this
+        private boolean writing; // a writer task is scheduled or running, guarded by this
+
+        SessionWriter(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void offer(Object key, QueuedFrame frame) {
+            boolean overflow;
+            synchronized (this) {
+                queue.merge(key, frame, StompBroadcaster::merge);
+                overflow = queue.size() > MAX_PENDING_FRAMES;
+                if (overflow) {
+                    queue.clear();
+                } else if (!writing) {
+                    writing = true;
+                    shards.write(this::drain);
+                }
+            }
+            if (overflow) {
+                WebSocketSession session = sessionRegistry.get(sessionId);
+                if (session != null) {
+                    log.warn("Closing slow WebSocket session {}: more than {} frames pending", sessionId, MAX_PENDING_FRAMES);
+                    closeQuietly(session);
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                QueuedFrame next;
+                synchronized (this) {
+                    Iterator<QueuedFrame> iterator = queue.values().iterator();
+                    if (!iterator.hasNext()) {
+                        writing = false;
+                        return;
+                    }
+                    next = iterator.next();
+                    iterator.remove();
+                }
+                WebSocketSession session = sessionRegistry.get(sessionId);
+                if (session == null || !session.isOpen()) {
+                    synchronized (this) {
+                        queue.clear();
+                        writing = false;
+                    }
+                    writers.remove(sessionId, this);
+                    return;
+                }
+                write(session, next);
+            }
+        }
+
+        private void write(WebSocketSession session, QueuedFrame queued) {
+            try {
+                BroadcastFrame frame = queued.frame() != null ? queued.frame()
+                        : newFrame(queued.destination(), objectMapper.writeValueAsString(queued.message()));
+                session.sendMessage(frame.forSubscription(queued.subscriptionId()));
+            } catch (JsonProcessingException e) {
+                log.error("Error serializing conflated message for session {}", sessionId, e);
+            } catch (SessionLimitExceededException e) {
+                log.warn("Closing slow WebSocket session {}: {}", sessionId, e.getMessage());
+                closeQuietly(session);
+            } catch (IOException e) {
+                log.debug("Failed to write broadcast frame to session {}", sessionId, e);
+            }
+        }
+    }
+}
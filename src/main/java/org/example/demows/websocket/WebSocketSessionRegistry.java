@@ -0,0 +1,53 @@
+package org.example.demows.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks open WebSocket sessions by id so pre-encoded frames can be written without going
+ * through the client outbound channel. The tracked session is the one {@link SubProtocolWebSocketHandler}
+ * decorates for the STOMP handler, so direct writes and broker writes share one send lock, buffer and limits.
+ */
+@Component
+@Slf4j
+public class WebSocketSessionRegistry {
+
+    private final ConcurrentMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public WebSocketSession get(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Creates the STOMP sub-protocol handler, registering each session as decorated by it.
+     */
+    public SubProtocolWebSocketHandler newSubProtocolWebSocketHandler(MessageChannel clientInboundChannel,
+                                                                       SubscribableChannel clientOutboundChannel) {
+        return new SubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel) {
+            @Override
+            protected WebSocketSession decorateSession(WebSocketSession session) {
+                WebSocketSession decorated = super.decorateSession(session);
+                sessions.put(session.getId(), decorated);
+                return decorated;
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+}
@@ -0,0 +1,11 @@
+
+-- Collapse key: a notification with the key of an unread one replaces it instead of adding a row
+ALTER TABLE notifications ADD COLUMN collapse_key VARCHAR(255);
+
+CREATE INDEX idx_notifications_user_collapse_key ON notifications(user_id, collapse_key)
+    WHERE collapse_key IS NOT NULL AND is_read = false;
+
+-- LOW priority notifications are pushed in a periodic digest; these are still waiting for it
+ALTER TABLE notifications ADD COLUMN digest_pending BOOLEAN NOT NULL DEFAULT false;
+
+CREATE INDEX idx_notifications_digest_pending ON notifications(user_id, seq) WHERE digest_pending = true;
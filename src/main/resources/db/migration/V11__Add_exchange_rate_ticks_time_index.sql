@@ -0,0 +1,3 @@
+-- The warm-up replay and the purge select ticks by time only. Ticks are appended in time order,
+-- so a BRIN index is enough and stays tiny (Hibernate-created schemas get a plain one from the entity)
+CREATE INDEX idx_exchange_rate_ticks_recorded_at ON exchange_rate_ticks USING BRIN (recorded_at);
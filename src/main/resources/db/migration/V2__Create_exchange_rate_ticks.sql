@@ -0,0 +1,9 @@
+-- Create exchange_rate_ticks table (append-only tick history)
+CREATE TABLE exchange_rate_ticks (
+    id BIGSERIAL PRIMARY KEY,
+    rate_id BIGINT NOT NULL,                      -- exchange_rates.id
+    rate DECIMAL(10, 6) NOT NULL,
+    recorded_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_exchange_rate_ticks_rate_time ON exchange_rate_ticks(rate_id, recorded_at);
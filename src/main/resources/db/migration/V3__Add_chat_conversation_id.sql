@@ -0,0 +1,15 @@
+-- Canonical conversation id: first 8 bytes of SHA-256(low || NUL || high) as a signed BIGINT,
+-- with the usernames ordered by their UTF-8 bytes (must match ChatMessage.conversationIdOf)
+ALTER TABLE chat_messages ADD COLUMN conversation_id BIGINT;
+
+UPDATE chat_messages
+SET conversation_id = ('x' || substr(encode(sha256(
+        convert_to(LEAST(sender_username COLLATE "C", receiver_username COLLATE "C"), 'UTF8')
+        || '\x00'::bytea
+        || convert_to(GREATEST(sender_username COLLATE "C", receiver_username COLLATE "C"), 'UTF8')
+    ), 'hex'), 1, 16))::bit(64)::bigint;
+
+ALTER TABLE chat_messages ALTER COLUMN conversation_id SET NOT NULL;
+
+-- Conversation loads become one range scan on (conversation_id, id)
+CREATE INDEX idx_chat_messages_conversation_id ON chat_messages(conversation_id, id);
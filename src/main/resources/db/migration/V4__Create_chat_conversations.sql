@@ -0,0 +1,32 @@
+-- Create chat_conversations table (per-user inbox summary, maintained by the chat service)
+CREATE TABLE chat_conversations (
+    id BIGSERIAL PRIMARY KEY,
+    owner_username VARCHAR(255) NOT NULL,
+    other_username VARCHAR(255) NOT NULL,
+    conversation_id BIGINT NOT NULL,              -- chat_messages.conversation_id
+    last_message_id BIGINT NOT NULL,
+    last_sender_username VARCHAR(255) NOT NULL,
+    last_message_preview VARCHAR(255) NOT NULL,
+    last_message_at TIMESTAMP NOT NULL,
+    unread_count BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT uk_chat_conversations_owner_other UNIQUE (owner_username, other_username)
+);
+
+CREATE INDEX idx_chat_conversations_owner_last_message ON chat_conversations(owner_username, last_message_at DESC);
+
+-- Backfill from the existing messages: both sides of every conversation, unread counted for the receiver
+INSERT INTO chat_conversations (owner_username, other_username, conversation_id, last_message_id,
+                                last_sender_username, last_message_preview, last_message_at, unread_count)
+SELECT DISTINCT ON (owner_username, other_username)
+       owner_username, other_username, conversation_id, id, sender_username, LEFT(message, 100), timestamp,
+       SUM(unread) OVER (PARTITION BY owner_username, other_username)
+FROM (
+    SELECT sender_username AS owner_username, receiver_username AS other_username, conversation_id, id,
+           sender_username, message, timestamp, 0 AS unread
+    FROM chat_messages WHERE is_deleted = false
+    UNION ALL
+    SELECT receiver_username, sender_username, conversation_id, id,
+           sender_username, message, timestamp, CASE WHEN is_read THEN 0 ELSE 1 END
+    FROM chat_messages WHERE is_deleted = false
+) sides
+ORDER BY owner_username, other_username, id DESC;
@@ -0,0 +1,70 @@
+-- Move chat_messages to monthly range partitions on timestamp, with a compressed archive for cold months.
+-- Only (id, timestamp) and (conversation_id, id) are indexed: every query goes through the conversation id.
+-- Upcoming partitions are created and cold ones archived by ChatMessageArchive.
+
+ALTER TABLE chat_messages RENAME TO chat_messages_unpartitioned;
+ALTER TABLE chat_messages_unpartitioned RENAME CONSTRAINT chat_messages_pkey TO chat_messages_unpartitioned_pkey;
+DROP INDEX idx_chat_messages_sender;
+DROP INDEX idx_chat_messages_receiver;
+DROP INDEX idx_chat_messages_conversation;
+DROP INDEX idx_chat_messages_timestamp;
+DROP INDEX idx_chat_messages_read;
+DROP INDEX idx_chat_messages_conversation_id;
+
+-- Keep the id sequence (ids are reserved from it in blocks) when the old table goes
+ALTER SEQUENCE chat_messages_id_seq OWNED BY NONE;
+
+CREATE TABLE chat_messages (
+    id BIGINT NOT NULL DEFAULT nextval('chat_messages_id_seq'),
+    sender_username VARCHAR(50) NOT NULL,
+    receiver_username VARCHAR(50) NOT NULL,
+    conversation_id BIGINT NOT NULL,
+    message TEXT NOT NULL,
+    message_type VARCHAR(20) DEFAULT 'TEXT',
+    timestamp TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,   -- partition key
+    is_read BOOLEAN DEFAULT FALSE,
+    read_at TIMESTAMP NULL,
+    is_deleted BOOLEAN DEFAULT FALSE,
+    PRIMARY KEY (id, timestamp)                               -- must contain the partition key
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE chat_messages_id_seq OWNED BY chat_messages.id;
+
+CREATE INDEX idx_chat_messages_conversation_id ON chat_messages(conversation_id, id);
+
+-- Catches rows outside every monthly partition
+CREATE TABLE chat_messages_default PARTITION OF chat_messages DEFAULT;
+
+-- One partition per month from the oldest message up to two months ahead
+DO $$
+DECLARE
+    part_month DATE;
+    last_month DATE := (date_trunc('month', now()) + INTERVAL '2 months')::date;
+BEGIN
+    SELECT date_trunc('month', COALESCE(MIN(timestamp), now()))::date INTO part_month FROM chat_messages_unpartitioned;
+    WHILE part_month <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF chat_messages FOR VALUES FROM (%L) TO (%L)',
+                       'chat_messages_p' || to_char(part_month, 'YYYY_MM'), part_month, (part_month + INTERVAL '1 month')::date);
+        part_month := (part_month + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO chat_messages (id, sender_username, receiver_username, conversation_id, message, message_type,
+                           timestamp, is_read, read_at, is_deleted)
+SELECT id, sender_username, receiver_username, conversation_id, message, message_type,
+       COALESCE(timestamp, CURRENT_TIMESTAMP), is_read, read_at, is_deleted
+FROM chat_messages_unpartitioned;
+
+DROP TABLE chat_messages_unpartitioned;
+
+-- Archived months: one row per conversation per month, its messages as a JSONB array ascending by id.
+-- The values are large enough for TOAST to store them compressed.
+CREATE TABLE chat_messages_archive (
+    conversation_id BIGINT NOT NULL,
+    month DATE NOT NULL,
+    first_id BIGINT NOT NULL,
+    last_id BIGINT NOT NULL,
+    message_count INT NOT NULL,
+    messages JSONB NOT NULL,
+    PRIMARY KEY (conversation_id, month)
+);
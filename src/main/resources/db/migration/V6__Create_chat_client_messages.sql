@@ -0,0 +1,14 @@
+-- Client message ids already used per sender: the unique constraint makes retried chat sends idempotent
+-- even when the in-memory dedupe window missed them (restart, retry on another instance).
+-- chat_messages itself cannot carry the constraint: unique keys of a partitioned table must contain its timestamp.
+CREATE TABLE chat_client_messages (
+    id BIGSERIAL PRIMARY KEY,
+    sender_username VARCHAR(255) NOT NULL,
+    client_message_id VARCHAR(64) NOT NULL,
+    message_id BIGINT NOT NULL,                   -- chat_messages.id
+    created_at TIMESTAMP NOT NULL,
+    CONSTRAINT uk_chat_client_messages_sender_client_id UNIQUE (sender_username, client_message_id)
+);
+
+-- Purge of expired ids
+CREATE INDEX idx_chat_client_messages_created_at ON chat_client_messages(created_at);
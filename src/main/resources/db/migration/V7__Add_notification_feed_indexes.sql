@@ -0,0 +1,5 @@
+-- Keyset pagination of the notification feed by (created_at, id), newest first
+CREATE INDEX idx_notifications_user_feed ON notifications(user_id, is_active, created_at DESC, id DESC);
+
+-- Unread counts only touch the (few) unread rows of a user
+CREATE INDEX idx_notifications_user_unread ON notifications(user_id) WHERE is_read = false AND is_active = true;
@@ -0,0 +1,7 @@
+-- Transactional outbox of notification frames, drained to the notifications topic by NotificationOutboxRelay
+CREATE TABLE notification_outbox (
+    id BIGSERIAL PRIMARY KEY,                     -- drained in id order
+    username VARCHAR(255) NOT NULL,               -- recipient, used as the Kafka key
+    payload TEXT NOT NULL,                        -- WebSocketMessage JSON
+    created_at TIMESTAMP NOT NULL
+);
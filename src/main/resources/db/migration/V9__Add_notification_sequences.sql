@@ -0,0 +1,18 @@
+-- Per-user notification sequence: every change of a user's notifications (create, read) takes the next number,
+-- so a reconnecting client asks only for what changed after the last number it saw.
+ALTER TABLE notifications ADD COLUMN seq BIGINT;
+
+UPDATE notifications n SET seq = s.seq
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY created_at, id) AS seq FROM notifications) s
+WHERE n.id = s.id;
+
+CREATE INDEX idx_notifications_user_seq ON notifications(user_id, seq);
+
+-- Last number handed out per user
+CREATE TABLE notification_sequences (
+    user_id BIGINT PRIMARY KEY,
+    last_seq BIGINT NOT NULL
+);
+
+INSERT INTO notification_sequences (user_id, last_seq)
+SELECT user_id, MAX(seq) FROM notifications GROUP BY user_id;
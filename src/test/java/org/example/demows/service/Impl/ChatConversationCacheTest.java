@@ -0,0 +1,162 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.ChatMessageDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatConversationCacheTest {
+
+    private final ChatConversationCache cache = new ChatConversationCache(3, 10, 300);
+
+    @Test
+    void pageIsUnknownUntilSeeded() {
+        cache.put(message(1L, "alice", "bob"));
+
+        assertThat(cache.page("alice", "bob", null, 1)).isNull();
+    }
+
+    @Test
+    void pageIsUnknownOnceTheSeedExpired() {
+        ChatConversationCache expiring = new ChatConversationCache(3, 10, -1);
+        expiring.seed("alice", "bob", List.of(message(1L, "alice", "bob")), true);
+
+        assertThat(expiring.page("alice", "bob", null, 1)).isNull();
+    }
+
+    @Test
+    void completeSeedAnswersEveryPageInBothDirections() {
+        cache.seed("alice", "bob", messages(3L, 2L, 1L), true);
+
+        assertThat(ids(cache.page("alice", "bob", null, 2))).containsExactly(3L, 2L);
+        assertThat(ids(cache.page("bob", "alice", 3L, 5))).containsExactly(2L, 1L);
+        assertThat(cache.page("alice", "bob", 1L, 5)).isEmpty();
+    }
+
+    @Test
+    void incompleteSeedAnswersOnlyFullPages() {
+        cache.seed("alice", "bob", messages(3L, 2L), false);
+
+        assertThat(ids(cache.page("alice", "bob", null, 2))).containsExactly(3L, 2L);
+        assertThat(ids(cache.page("alice", "bob", 3L, 1))).containsExactly(2L);
+        assertThat(cache.page("alice", "bob", null, 3)).isNull();
+        assertThat(cache.page("alice", "bob", 2L, 1)).isNull();
+    }
+
+    @Test
+    void seedKeepsMessagesSentMeanwhile() {
+        cache.seed("alice", "bob", messages(2L, 1L), true);
+        cache.put(message(3L, "alice", "bob"));
+
+        cache.seed("alice", "bob", messages(2L, 1L), true);
+
+        assertThat(ids(cache.page("alice", "bob", null, 3))).containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    void seedDropsCachedMessagesOlderThanAnIncompleteLoad() {
+        cache.seed("alice", "bob", messages(2L, 1L), true);
+
+        cache.seed("alice", "bob", messages(3L, 2L), false);
+
+        assertThat(ids(cache.page("alice", "bob", null, 2))).containsExactly(3L, 2L);
+        assertThat(cache.page("alice", "bob", 2L, 1)).isNull();
+    }
+
+    @Test
+    void seedKeepsReadReceiptsTheLoadHasNotSeenYet() {
+        cache.seed("alice", "bob", messages(1L), true);
+        cache.markRead("alice", "bob", 1L, "2024-01-01T10:00:00");
+
+        cache.seed("alice", "bob", messages(1L), true);
+
+        ChatMessageDto message = cache.page("alice", "bob", null, 1).get(0);
+        assertThat(message.isRead()).isTrue();
+        assertThat(message.getReadAt()).isEqualTo("2024-01-01T10:00:00");
+    }
+
+    @Test
+    void putInsertsIntoTheMiddleAndReplacesUpdates() {
+        ChatConversationCache large = new ChatConversationCache(5, 10, 300);
+        large.seed("alice", "bob", messages(4L, 2L, 1L), true);
+
+        large.put(message(3L, "bob", "alice"));
+        ChatMessageDto edited = message(2L, "alice", "bob");
+        edited.setMessage("edited");
+        large.put(edited);
+
+        List<ChatMessageDto> page = large.page("alice", "bob", null, 5);
+        assertThat(ids(page)).containsExactly(4L, 3L, 2L, 1L);
+        assertThat(page.get(2).getMessage()).isEqualTo("edited");
+    }
+
+    @Test
+    void putAtCapacityDropsTheOldestAndForgetsCompleteness() {
+        cache.seed("alice", "bob", messages(3L, 2L, 1L), true);
+
+        cache.put(message(4L, "alice", "bob"));
+
+        assertThat(ids(cache.page("alice", "bob", null, 3))).containsExactly(4L, 3L, 2L);
+        assertThat(cache.page("alice", "bob", null, 4)).isNull();
+        assertThat(cache.page("alice", "bob", 2L, 1)).isNull();
+    }
+
+    @Test
+    void putIntoTheMiddleOfAFullWrappedBuffer() {
+        cache.seed("alice", "bob", messages(3L, 2L, 1L), true);
+        cache.put(message(5L, "alice", "bob"));
+
+        cache.put(message(4L, "bob", "alice"));
+
+        assertThat(ids(cache.page("alice", "bob", null, 3))).containsExactly(5L, 4L, 3L);
+    }
+
+    @Test
+    void putOlderThanEverythingNeedsACompleteBufferWithRoom() {
+        cache.seed("alice", "bob", messages(5L, 4L), false);
+        cache.put(message(3L, "alice", "bob"));
+
+        assertThat(cache.page("alice", "bob", null, 3)).isNull();
+
+        cache.seed("alice", "bob", messages(5L, 4L), true);
+        cache.put(message(3L, "alice", "bob"));
+
+        assertThat(ids(cache.page("alice", "bob", null, 3))).containsExactly(5L, 4L, 3L);
+    }
+
+    @Test
+    void markReadOnlyTouchesTheSendersMessagesUpToTheReceipt() {
+        ChatMessageDto sent = message(1L, "alice", "bob");
+        sent.setClientMessageId("client-1");
+        cache.seed("alice", "bob", List.of(message(3L, "alice", "bob"), message(2L, "bob", "alice"), sent), true);
+
+        cache.markRead("alice", "bob", 2L, "2024-01-01T10:00:00");
+
+        List<ChatMessageDto> page = cache.page("alice", "bob", null, 3);
+        assertThat(page).extracting(ChatMessageDto::isRead).containsExactly(false, false, true);
+        assertThat(page.get(2).getClientMessageId()).isEqualTo("client-1");
+    }
+
+    private static List<ChatMessageDto> messages(Long... newestFirst) {
+        return Arrays.stream(newestFirst).map(id -> message(id, "alice", "bob")).toList();
+    }
+
+    private static ChatMessageDto message(Long id, String sender, String receiver) {
+        return ChatMessageDto.builder()
+                .id(id)
+                .senderUsername(sender)
+                .receiverUsername(receiver)
+                .message("Message " + id)
+                .messageType("TEXT")
+                .timestamp("2024-01-01T09:00:00")
+                .build();
+    }
+
+    private static List<Long> ids(List<ChatMessageDto> messages) {
+        assertThat(messages).isNotNull();
+        return messages.stream().map(ChatMessageDto::getId).toList();
+    }
+}
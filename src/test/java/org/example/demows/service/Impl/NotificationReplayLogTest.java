@@ -0,0 +1,124 @@
+package org.example.demows.service.Impl;
+
+import org.example.demows.dto.NotificationDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationReplayLogTest {
+
+    private final NotificationReplayLog replayLog = new NotificationReplayLog(3, 2);
+
+    @Test
+    void replaysEverythingAfterTheClientsSequence() {
+        replayLog.append(frame("alice", 10L, 1L));
+        replayLog.append(frame("alice", 11L, 2L));
+        replayLog.append(frame("alice", 12L, 3L));
+
+        assertThat(seqs(replayLog.replay("alice", 1L))).containsExactly(2L, 3L);
+        assertThat(seqs(replayLog.replay("alice", 0L))).containsExactly(1L, 2L, 3L);
+        assertThat(replayLog.replay("alice", 3L)).isEmpty();
+    }
+
+    @Test
+    void unknownUserOrSequenceBeforeTheLogFallsBack() {
+        replayLog.append(frame("alice", 10L, 5L));
+        replayLog.append(frame("alice", 11L, 6L));
+
+        assertThat(replayLog.replay("bob", 0L)).isNull();
+        assertThat(replayLog.replay("alice", 3L)).isNull();
+        assertThat(seqs(replayLog.replay("alice", 4L))).containsExactly(5L, 6L);
+    }
+
+    @Test
+    void gapFallsBackUntilTheMissingFrameArrives() {
+        replayLog.append(frame("alice", 10L, 1L));
+        replayLog.append(frame("alice", 12L, 3L));
+
+        assertThat(replayLog.replay("alice", 0L)).isNull();
+        assertThat(seqs(replayLog.replay("alice", 2L))).containsExactly(3L);
+
+        replayLog.append(frame("alice", 11L, 2L));
+
+        assertThat(seqs(replayLog.replay("alice", 0L))).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void frameOlderThanTheLogIsDropped() {
+        replayLog.append(frame("alice", 10L, 5L));
+        replayLog.append(frame("alice", 9L, 3L));
+
+        assertThat(replayLog.replay("alice", 2L)).isNull();
+        assertThat(seqs(replayLog.replay("alice", 4L))).containsExactly(5L);
+    }
+
+    @Test
+    void evictsTheOldestFramesBeyondCapacity() {
+        for (long seq = 1; seq <= 5; seq++) {
+            replayLog.append(frame("alice", 10L + seq, seq));
+        }
+
+        assertThat(replayLog.replay("alice", 1L)).isNull();
+        assertThat(seqs(replayLog.replay("alice", 2L))).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    void keepsOnlyTheLatestFrameOfEachNotification() {
+        replayLog.append(frame("alice", 10L, 1L));
+        replayLog.append(frame("alice", 11L, 2L));
+        replayLog.append(frame("alice", 10L, 3L));
+
+        List<NotificationDto> replayed = replayLog.replay("alice", 0L);
+
+        assertThat(replayed).extracting(NotificationDto::getId).containsExactly(11L, 10L);
+        assertThat(seqs(replayed)).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void appendIfTrackedIgnoresUsersWithoutALog() {
+        replayLog.appendIfTracked(frame("alice", 10L, 1L));
+        assertThat(replayLog.replay("alice", 0L)).isNull();
+
+        replayLog.append(frame("alice", 10L, 1L));
+        replayLog.appendIfTracked(frame("alice", 11L, 2L));
+        assertThat(seqs(replayLog.replay("alice", 0L))).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedUserBeyondMaxUsers() {
+        replayLog.append(frame("alice", 10L, 1L));
+        replayLog.append(frame("bob", 20L, 1L));
+        replayLog.replay("alice", 0L);
+        replayLog.append(frame("carol", 30L, 1L));
+
+        assertThat(replayLog.replay("bob", 0L)).isNull();
+        assertThat(seqs(replayLog.replay("alice", 0L))).containsExactly(1L);
+        assertThat(seqs(replayLog.replay("carol", 0L))).containsExactly(1L);
+    }
+
+    @Test
+    void ignoresFramesWithoutSequence() {
+        replayLog.append(frame("alice", 10L, null));
+
+        assertThat(replayLog.replay("alice", 0L)).isNull();
+    }
+
+    private static NotificationDto frame(String username, Long id, Long seq) {
+        return NotificationDto.builder()
+                .id(id)
+                .username(username)
+                .title("Title " + id)
+                .message("Message " + id)
+                .type("INFO")
+                .priority("NORMAL")
+                .seq(seq)
+                .build();
+    }
+
+    private static List<Long> seqs(List<NotificationDto> notifications) {
+        assertThat(notifications).isNotNull();
+        return notifications.stream().map(NotificationDto::getSeq).toList();
+    }
+}
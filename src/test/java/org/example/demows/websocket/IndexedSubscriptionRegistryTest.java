@@ -0,0 +1,157 @@
+package org.example.demows.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexedSubscriptionRegistryTest {
+
+    private final IndexedSubscriptionRegistry registry = new IndexedSubscriptionRegistry();
+
+    @Test
+    void findsOnlyTheSubscribersOfTheExactDestination() {
+        subscribe("s1", "sub1", "/topic/rates.EURUSD");
+        subscribe("s1", "sub2", "/topic/rates.EURUSD");
+        subscribe("s2", "sub1", "/topic/rates.USDJPY");
+
+        MultiValueMap<String, String> subscriptions = registry.findSubscriptions("/topic/rates.EURUSD");
+
+        assertThat(subscriptions).containsOnlyKeys("s1");
+        assertThat(subscriptions.get("s1")).containsExactlyInAnyOrder("sub1", "sub2");
+        assertThat(registry.findSubscriptions("/topic/rates.GBPUSD")).isEmpty();
+    }
+
+    @Test
+    void patternSubscriptionsMatchEveryDestinationTheyCover() {
+        subscribe("s1", "sub1", "/topic/rates.EURUSD");
+        subscribe("s2", "sub1", "/topic/rates.*");
+        subscribe("s3", "sub1", "/topic/notifications/**");
+
+        assertThat(registry.findSubscriptions("/topic/rates.EURUSD")).containsOnlyKeys("s1", "s2");
+        assertThat(registry.findSubscriptions("/topic/rates.USDJPY")).containsOnlyKeys("s2");
+        assertThat(registry.findSubscriptions("/topic/notifications/alice/read")).containsOnlyKeys("s3");
+    }
+
+    @Test
+    void unsubscribeAndDisconnectRemoveSubscriptions() {
+        subscribe("s1", "sub1", "/topic/rates.EURUSD");
+        subscribe("s1", "sub2", "/topic/rates.*");
+        subscribe("s2", "sub1", "/topic/rates.EURUSD");
+
+        unsubscribe("s1", "sub1");
+        assertThat(registry.findSubscriptions("/topic/rates.EURUSD")).containsOnlyKeys("s1", "s2");
+        assertThat(registry.findSubscriptions("/topic/rates.EURUSD").get("s1")).containsExactly("sub2");
+
+        registry.unregisterAllSubscriptions("s1");
+        assertThat(registry.findSubscriptions("/topic/rates.EURUSD")).containsOnlyKeys("s2");
+
+        unsubscribe("s2", "sub1");
+        unsubscribe("s2", "unknown");
+        assertThat(registry.findSubscriptions("/topic/rates.EURUSD")).isEmpty();
+    }
+
+    @Test
+    void destinationGroupTracksExistingAndLaterDestinations() {
+        subscribe("s1", "sub1", "/topic/rates.EURUSD");
+        subscribe("s1", "sub2", "/topic/chat.alice");
+        registry.registerDestinationGroup("/topic/rates.");
+        subscribe("s2", "sub1", "/topic/rates.USDJPY");
+
+        assertThat(groupDestinations("/topic/rates.")).containsOnlyKeys("/topic/rates.EURUSD", "/topic/rates.USDJPY");
+
+        unsubscribe("s1", "sub1");
+        assertThat(groupDestinations("/topic/rates.")).containsOnlyKeys("/topic/rates.USDJPY");
+
+        subscribe("s3", "sub1", "/topic/rates.EURUSD");
+        Map<String, MultiValueMap<String, String>> destinations = groupDestinations("/topic/rates.");
+        assertThat(destinations).containsOnlyKeys("/topic/rates.EURUSD", "/topic/rates.USDJPY");
+        assertThat(destinations.get("/topic/rates.EURUSD")).containsOnlyKeys("s3");
+
+        registry.unregisterAllSubscriptions("s2");
+        registry.unregisterAllSubscriptions("s3");
+        assertThat(groupDestinations("/topic/rates.")).isEmpty();
+    }
+
+    @Test
+    void concurrentSubscribeAndUnsubscribeKeepTheIndexConsistent() throws Exception {
+        int threads = 8;
+        int subscriptionsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String sessionId = "session-" + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < subscriptionsPerThread; i++) {
+                        subscribe(sessionId, "sub-" + i, "/topic/rates.P" + (i % 4));
+                        if (i % 2 == 0) {
+                            unsubscribe(sessionId, "sub-" + i);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Odd subscriptions only ever landed on P1 and P3, the even ones were all removed
+        assertThat(registry.findSubscriptions("/topic/rates.P0")).isEmpty();
+        assertThat(registry.findSubscriptions("/topic/rates.P2")).isEmpty();
+        MultiValueMap<String, String> p1 = registry.findSubscriptions("/topic/rates.P1");
+        assertThat(p1).hasSize(threads);
+        p1.forEach((sessionId, subscriptionIds) -> assertThat(subscriptionIds).hasSize(subscriptionsPerThread / 4));
+        assertThat(registry.findSubscriptions("/topic/rates.P3")).hasSize(threads);
+
+        for (int t = 0; t < threads; t++) {
+            registry.unregisterAllSubscriptions("session-" + t);
+        }
+        assertThat(registry.findSubscriptions("/topic/rates.P1")).isEmpty();
+        assertThat(registry.findSubscriptions("/topic/rates.P3")).isEmpty();
+    }
+
+    private Map<String, MultiValueMap<String, String>> groupDestinations(String prefix) {
+        Map<String, MultiValueMap<String, String>> destinations = new HashMap<>();
+        registry.forEachDestinationInGroup(prefix, destinations::put);
+        return destinations;
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        registry.registerSubscription(message(accessor));
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        registry.unregisterSubscription(message(accessor));
+    }
+
+    private static Message<byte[]> message(SimpMessageHeaderAccessor accessor) {
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}